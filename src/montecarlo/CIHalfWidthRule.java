@@ -0,0 +1,135 @@
+package montecarlo;
+
+import statistics.InverseStdNormalCDF;
+import statistics.InverseStudentTCDF;
+import statistics.StatCollector;
+
+/**
+ * Stopping rule of MonteCarloSimulation.simulateTillGivenCIHalfWidth.
+ * <p>
+ * First asks for initialNumberOfRuns runs, then estimates the number N of runs needed for a confidence interval
+ * half width no more than maxHalfWidth (using a Student quantile, rounded up to a multiple of additionalNumberOfRuns)
+ * and asks for N runs.
+ * Then, as long as the C.I. is too wide, asks for additionalNumberOfRuns more runs.
+ * <p>
+ * N is estimated only once, so that the simulation may creep forward by many small steps when N is underestimated.
+ * See ReEstimatingRule for a rule re-estimating N after each step.
+ */
+public class CIHalfWidthRule implements StoppingRule {
+
+	private static final long serialVersionUID = 1L;
+
+	private final double level;
+	private final double maxHalfWidth;
+	private final long initialNumberOfRuns;
+	private final long additionalNumberOfRuns;
+	// Estimated number of runs N (-1 before estimation)
+	private long estimatedNumberOfRuns;
+	// Number of runs asked by the last call to getTargetNumberOfRuns (0 before first call)
+	private long targetNumberOfRuns;
+
+	/**
+	 * Creates a new rule.
+	 *
+	 * @param level                  confidence level of the confidence interval
+	 * @param maxHalfWidth           maximal half width of the confidence interval
+	 * @param initialNumberOfRuns    initial number of runs to be performed
+	 * @param additionalNumberOfRuns additional number of runs to be performed if C.I. is too wide
+	 */
+	public CIHalfWidthRule(double level, double maxHalfWidth, long initialNumberOfRuns, long additionalNumberOfRuns) {
+		this.level = level;
+		this.maxHalfWidth = maxHalfWidth;
+		this.initialNumberOfRuns = initialNumberOfRuns;
+		this.additionalNumberOfRuns = additionalNumberOfRuns;
+		this.estimatedNumberOfRuns = -1;
+		this.targetNumberOfRuns = 0;
+	}
+
+	/**
+	 * Returns the total number of runs to be reached before this rule is called again. The simulation stops when the
+	 * returned value is not greater than the number of observations of stat.
+	 *
+	 * @param stat collector of the results of the runs performed so far
+	 * @return number of runs to be reached
+	 */
+	@Override
+	public long getTargetNumberOfRuns(StatCollector stat) {
+		long numberOfRuns = stat.getNumberOfObs();
+
+		// Current phase is not over
+		if (numberOfRuns < targetNumberOfRuns) {
+			return targetNumberOfRuns;
+		}
+
+		if (targetNumberOfRuns == 0) {
+			// 1) Dans une première phase Ninit simulations de l’expérience sont effectuées
+			targetNumberOfRuns = initialNumberOfRuns;
+		} else if (estimatedNumberOfRuns < 0) {
+			// 2) À partir des données récoltées une estimation du nombre N de réalisations à générer
+			//    afin d’obtenir un intervalle de confiance dont la demi-largeur ne dépasse pas (delta)max est
+			//    effectuée. Cette valeur de N est ensuite arrondie, vers le haut, au plus proche multiple
+			//    de Nadd.
+			//    Le quantile de Student (n - 1 degrés de liberté) est utilisé, celui de la loi normale étant
+			//    optimiste pour un petit nombre de simulations initiales.
+			double studentQuantile = (numberOfRuns < 2) ? Double.NaN
+					: InverseStudentTCDF.getQuantile(0.5 - level / 2.0, numberOfRuns - 1);
+			double estimationOfN = Math.pow(((studentQuantile * stat.getStandardDeviation()) / maxHalfWidth), 2);
+			estimationOfN = Math.ceil(estimationOfN / additionalNumberOfRuns) * additionalNumberOfRuns;
+			estimatedNumberOfRuns = (long) estimationOfN;
+
+			// 3) La simulation est poursuivie jusqu’à atteindre N réalisations de l’expérience.
+			targetNumberOfRuns = Math.max(estimatedNumberOfRuns, numberOfRuns);
+			if (targetNumberOfRuns == numberOfRuns) {
+				targetNumberOfRuns = nextTarget(stat, numberOfRuns);
+			}
+		} else {
+			targetNumberOfRuns = nextTarget(stat, numberOfRuns);
+		}
+		return targetNumberOfRuns;
+	}
+
+	/**
+	 * 4) Si la demi-largeur de l’intervalle de confiance, calculé sur la base de ces N réalisations,
+	 *    est inférieure ou égale à (delta)max le processus s’arrête. Sinon Nadd simulations supplémentaires
+	 *    sont effectuées avant de recalculer un nouvel intervalle de confiance et de retester
+	 *    la condition d’arrêt.
+	 */
+	private long nextTarget(StatCollector stat, long numberOfRuns) {
+		if (stat.getConfidenceIntervalHalfWidth(level) >= maxHalfWidth) {
+			return numberOfRuns + additionalNumberOfRuns;
+		}
+		return numberOfRuns;
+	}
+
+	/**
+	 * Returns the number of runs N estimated after the initial runs.
+	 *
+	 * @return estimated number of runs, or -1 if not estimated yet
+	 */
+	public long getEstimatedNumberOfRuns() {
+		return estimatedNumberOfRuns;
+	}
+
+	/**
+	 * Returns the number of runs needed for a C.I. half width (computed with the normal quantile, as in the stopping
+	 * test) no more than maxHalfWidth, estimated from the standard deviation of stat.
+	 *
+	 * @param stat collector of the results of the runs performed so far
+	 * @return minimal number of runs, or -1 if it cannot be estimated yet
+	 */
+	@Override
+	public long getMinimumNumberOfRuns(StatCollector stat) {
+		return minimumNumberOfRuns(InverseStdNormalCDF.getQuantile(0.5 - level / 2.0), stat.getStandardDeviation(),
+				maxHalfWidth);
+	}
+
+	/**
+	 * Returns ceil((quantile * standardDeviation / maxHalfWidth)^2), or -1 if standardDeviation is not known.
+	 */
+	static long minimumNumberOfRuns(double quantile, double standardDeviation, double maxHalfWidth) {
+		if (Double.isNaN(standardDeviation)) {
+			return -1;
+		}
+		return (long) Math.ceil(Math.pow(quantile * standardDeviation / maxHalfWidth, 2));
+	}
+}
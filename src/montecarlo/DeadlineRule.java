@@ -0,0 +1,168 @@
+package montecarlo;
+
+import statistics.InverseStdNormalCDF;
+import statistics.StatCollector;
+
+/**
+ * Stopping rule bounding the wall-clock duration of a simulation, optionally stopping earlier once the confidence
+ * interval half width is less than maxHalfWidth.
+ * <p>
+ * The budget starts with the first call to getTargetNumberOfRuns. The first step is a single run; afterwards the
+ * average cost of a run is measured from the runs performed since the start, and each step asks for half of the
+ * runs which can still be afforded before the deadline (at least one run, and no more than the runs measured so
+ * far), so that the steps shrink as the deadline approaches and the simulation stops when not even one more run can
+ * be afforded. Once initialNumberOfRuns runs are performed, steps are also limited to the number of runs estimated to
+ * reach the targeted half width. The deadline may thus only be exceeded by the variability of the cost of the runs of
+ * the last step.
+ * <p>
+ * The start of the budget is not saved with a checkpoint: after deserialization, the rule starts a new budget.
+ */
+public class DeadlineRule implements StoppingRule {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long timeBudgetNanos;
+	private final double level;
+	private final double maxHalfWidth;
+	private final long initialNumberOfRuns;
+	// Number of runs asked by the last call to getTargetNumberOfRuns (0 before first call)
+	private long targetNumberOfRuns;
+	// Start of the budget (System.nanoTime) and number of runs performed before it
+	private transient boolean started;
+	private transient long startTime;
+	private transient long numberOfRunsAtStart;
+	// Time elapsed and number of runs performed since the start of the budget, at the last call
+	private transient long elapsedTime;
+	private transient long numberOfRunsSinceStart;
+	private transient boolean deadlineReached;
+
+	/**
+	 * Creates a new rule stopping at the deadline or once the C.I. half width is less than maxHalfWidth, whichever
+	 * comes first.
+	 *
+	 * @param timeBudgetNanos     maximal duration of the simulation in nanoseconds
+	 * @param level               confidence level of the confidence interval
+	 * @param maxHalfWidth        maximal half width of the confidence interval (0 to run until the deadline)
+	 * @param initialNumberOfRuns number of runs to be performed before the C.I. is tested (if time allows)
+	 * @throws IllegalArgumentException if timeBudgetNanos is not positive or maxHalfWidth is negative
+	 */
+	public DeadlineRule(long timeBudgetNanos, double level, double maxHalfWidth, long initialNumberOfRuns) {
+		if (timeBudgetNanos <= 0) {
+			throw new IllegalArgumentException("Time budget should be positive.");
+		}
+		if (!(maxHalfWidth >= 0)) {
+			throw new IllegalArgumentException("Maximal half width should be non negative.");
+		}
+		this.timeBudgetNanos = timeBudgetNanos;
+		this.level = level;
+		this.maxHalfWidth = maxHalfWidth;
+		this.initialNumberOfRuns = initialNumberOfRuns;
+	}
+
+	/**
+	 * Creates a new rule performing as many runs as possible before the deadline.
+	 *
+	 * @param timeBudgetNanos maximal duration of the simulation in nanoseconds
+	 * @throws IllegalArgumentException if timeBudgetNanos is not positive
+	 */
+	public DeadlineRule(long timeBudgetNanos) {
+		this(timeBudgetNanos, 0.95, 0, 0);
+	}
+
+	@Override
+	public long getTargetNumberOfRuns(StatCollector stat) {
+		long numberOfRuns = stat.getNumberOfObs();
+
+		// Current step is not over
+		if (numberOfRuns < targetNumberOfRuns) {
+			return targetNumberOfRuns;
+		}
+
+		long now = System.nanoTime();
+		if (!started) {
+			started = true;
+			startTime = now;
+			numberOfRunsAtStart = numberOfRuns;
+		}
+		elapsedTime = now - startTime;
+		numberOfRunsSinceStart = numberOfRuns - numberOfRunsAtStart;
+
+		long remainingTime = timeBudgetNanos - elapsedTime;
+		long affordableNumberOfRuns;
+		if (remainingTime <= 0) {
+			affordableNumberOfRuns = 0;
+		} else if (numberOfRunsSinceStart == 0) {
+			// Cost of a run not known yet: one run to measure it
+			affordableNumberOfRuns = 1;
+		} else {
+			// A cost of 0 (runs faster than the resolution of the clock) would allow any number of runs
+			affordableNumberOfRuns = (long) (remainingTime / Math.max(1.0, getAverageRunCost()));
+		}
+		if (affordableNumberOfRuns < 1) {
+			deadlineReached = true;
+			targetNumberOfRuns = numberOfRuns;
+			return targetNumberOfRuns;
+		}
+
+		// At most doubles the number of runs measured, so that a poor cost estimate cannot overshoot much
+		long step = Math.max(1, Math.min(affordableNumberOfRuns / 2, numberOfRunsSinceStart));
+		if (numberOfRuns < initialNumberOfRuns) {
+			step = Math.min(step, initialNumberOfRuns - numberOfRuns);
+		} else if (maxHalfWidth > 0 && numberOfRuns >= 2) {
+			if (stat.getConfidenceIntervalHalfWidth(level) < maxHalfWidth) {
+				// C.I. is narrow enough
+				targetNumberOfRuns = numberOfRuns;
+				return targetNumberOfRuns;
+			}
+			step = Math.min(step, Math.max(1, getMinimumNumberOfRuns(stat) - numberOfRuns));
+		}
+		targetNumberOfRuns = numberOfRuns + step;
+		return targetNumberOfRuns;
+	}
+
+	/**
+	 * Returns the number of runs needed for a C.I. half width no more than maxHalfWidth, estimated from the standard
+	 * deviation of stat (see CIHalfWidthRule).
+	 *
+	 * @param stat collector of the results of the runs performed so far
+	 * @return minimal number of runs, or -1 if it cannot be estimated yet or if no half width is targeted
+	 */
+	@Override
+	public long getMinimumNumberOfRuns(StatCollector stat) {
+		if (maxHalfWidth == 0) {
+			return -1;
+		}
+		return CIHalfWidthRule.minimumNumberOfRuns(InverseStdNormalCDF.getQuantile(0.5 - level / 2.0),
+				stat.getStandardDeviation(), maxHalfWidth);
+	}
+
+	/**
+	 * Returns true if the simulation stopped because no more run could be afforded before the deadline, false if it
+	 * stopped because the C.I. was narrow enough (or is not over).
+	 *
+	 * @return true if the deadline was reached
+	 */
+	public boolean isDeadlineReached() {
+		return deadlineReached;
+	}
+
+	/**
+	 * Returns the time elapsed between the first and the last call to getTargetNumberOfRuns, that is the duration of
+	 * the simulation once it is over.
+	 *
+	 * @return elapsed time in nanoseconds
+	 */
+	public long getElapsedTime() {
+		return elapsedTime;
+	}
+
+	/**
+	 * Returns the average wall-clock cost of a run, measured over the runs performed since the start of the budget
+	 * (with a parallel simulation, the cost of a run divided by the parallelism).
+	 *
+	 * @return cost of a run in nanoseconds, or NaN if no run was measured
+	 */
+	public double getAverageRunCost() {
+		return (numberOfRunsSinceStart == 0) ? Double.NaN : (double) elapsedTime / numberOfRunsSinceStart;
+	}
+}
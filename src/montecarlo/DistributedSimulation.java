@@ -0,0 +1,331 @@
+package montecarlo;
+
+import statistics.StatCollector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * This class provides methods for Monte Carlo simulations distributed over several worker processes (see
+ * DistributedWorker), possibly on other hosts.
+ * <p>
+ * Runs are grouped in batches. Each batch is simulated by a worker with its own random source, whose seed only
+ * depends on the seed of the simulation and on the batch index. Batch results are merged in batch order, so that the
+ * final result only depends on the seed, not on the number of workers nor on their speed.
+ * <p>
+ * A worker which fails (lost connection, or result which is not the one of the batch it was sent) is closed and its
+ * batch is sent again to another worker, so that the result does not change. The simulation only fails once all
+ * workers have failed.
+ */
+public class DistributedSimulation {
+
+	// Messages sent to the workers
+	static final byte STOP = 0;
+	static final byte TASK = 1;
+
+	/**
+	 * Private constructor. Makes it impossible to instantiate.
+	 */
+	private DistributedSimulation() {
+	}
+
+	/**
+	 * Returns the seed of the random source used to simulate a batch.
+	 *
+	 * @param seed  seed of the simulation
+	 * @param batch index of the batch
+	 * @return seed of the batch
+	 */
+	public static long getBatchSeed(long seed, long batch) {
+		return new SplittableRandom(seed + batch * 0x9E3779B97F4A7C15L).nextLong();
+	}
+
+	/**
+	 * Launches worker processes on this host, using the same Java runtime and class path as the current process.
+	 * Their standard output and error streams are inherited from the current process.
+	 *
+	 * @param numberOfWorkers number of processes to be launched
+	 * @param port            port the coordinator listens to
+	 * @param factory         class of the factory creating the experiment in each worker
+	 * @param factoryArgs     arguments given to the factory
+	 * @return launched processes
+	 * @throws IOException if a process cannot be launched
+	 */
+	public static List<Process> launchLocalWorkers(int numberOfWorkers,
+												   int port,
+												   Class<? extends ExperimentFactory> factory,
+												   String... factoryArgs) throws IOException {
+		List<String> command = new ArrayList<>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(DistributedWorker.class.getName());
+		command.add("localhost");
+		command.add(Integer.toString(port));
+		command.add(factory.getName());
+		command.addAll(List.of(factoryArgs));
+
+		List<Process> processes = new ArrayList<>();
+		for (int i = 0; i < numberOfWorkers; ++i) {
+			processes.add(new ProcessBuilder(command).inheritIO().start());
+		}
+		return processes;
+	}
+
+	/**
+	 * Distributed version of MonteCarloSimulation.simulateTillGivenCIHalfWidth: waits for numberOfWorkers workers to
+	 * connect to server, then has them simulate batches of additionalNumberOfRuns runs until the stopping rule of
+	 * simulateTillGivenCIHalfWidth (see CIHalfWidthRule), applied to the merged results, is satisfied.
+	 * <p>
+	 * The number of runs asked by the rule is rounded up to a multiple of the batch size. To keep all workers busy,
+	 * a few batches are simulated ahead of the rule's decisions; results of batches which turn out not to be needed
+	 * are discarded.
+	 *
+	 * @param server                 socket the workers connect to
+	 * @param numberOfWorkers        number of workers to wait for
+	 * @param level                  confidence level of the confidence interval
+	 * @param maxHalfWidth           maximal half width of the confidence interval
+	 * @param initialNumberOfRuns    initial number of runs to be performed
+	 * @param additionalNumberOfRuns additional number of runs to be performed if C.I. is too wide (batch size)
+	 * @param seed                   seed of the simulation
+	 * @param stat                   collector to be used to collect the results of each experiment
+	 * @throws IOException if communication with a worker fails
+	 */
+	public static void simulateTillGivenCIHalfWidth(ServerSocket server,
+													int numberOfWorkers,
+													double level,
+													double maxHalfWidth,
+													long initialNumberOfRuns,
+													long additionalNumberOfRuns,
+													long seed,
+													StatCollector stat) throws IOException {
+		simulate(server, numberOfWorkers,
+				new CIHalfWidthRule(level, maxHalfWidth, initialNumberOfRuns, additionalNumberOfRuns),
+				additionalNumberOfRuns, seed, stat);
+	}
+
+	/**
+	 * Waits for numberOfWorkers workers to connect to server, then has them simulate batches of batchSize runs until
+	 * rule, applied to the merged results, is satisfied. The number of runs asked by the rule is rounded up to a
+	 * multiple of the batch size.
+	 *
+	 * @param server          socket the workers connect to
+	 * @param numberOfWorkers number of workers to wait for
+	 * @param rule            rule deciding the number of runs to be performed
+	 * @param batchSize       number of runs per batch
+	 * @param seed            seed of the simulation
+	 * @param stat            collector to be used to collect the results of each experiment
+	 * @throws IOException if communication with a worker fails
+	 */
+	public static void simulate(ServerSocket server,
+								int numberOfWorkers,
+								StoppingRule rule,
+								long batchSize,
+								long seed,
+								StatCollector stat) throws IOException {
+		if (numberOfWorkers <= 0 || batchSize <= 0) {
+			throw new IllegalArgumentException("Number of workers and batch size should be positive.");
+		}
+
+		BlockingQueue<BatchResult> results = new LinkedBlockingQueue<>();
+		List<WorkerConnection> workers = new ArrayList<>();
+
+		try {
+			// Waits for workers
+			for (int w = 0; w < numberOfWorkers; ++w) {
+				workers.add(new WorkerConnection(server.accept(), results));
+			}
+			ArrayDeque<WorkerConnection> idleWorkers = new ArrayDeque<>(workers);
+			int liveWorkers = numberOfWorkers;
+			// Batches of failed workers, to be sent again
+			ArrayDeque<Long> lostBatches = new ArrayDeque<>();
+
+			Map<Long, StatCollector> pendingResults = new HashMap<>();
+			long nextBatch = 0;         // index of next batch to be sent
+			long nextBatchToMerge = 0;  // index of next batch to be merged into stat
+			long targetBatches = batchesFor(rule.getTargetNumberOfRuns(stat), batchSize);
+
+			while (nextBatchToMerge < targetBatches) {
+				// Keeps idle workers busy, simulating a few batches ahead of target
+				while (!idleWorkers.isEmpty()
+						&& (!lostBatches.isEmpty() || nextBatch < targetBatches + liveWorkers - 1)) {
+					WorkerConnection worker = idleWorkers.poll();
+					long batch = lostBatches.isEmpty() ? nextBatch++ : lostBatches.poll();
+					try {
+						worker.send(batch, getBatchSeed(seed, batch), batchSize);
+					} catch (IOException e) {
+						lostBatches.addFirst(batch);
+						liveWorkers = fail(worker, e, lostBatches, liveWorkers);
+					}
+				}
+
+				BatchResult result = takeResult(results);
+				WorkerConnection worker = result.worker;
+				if (worker.failed) {
+					// Late message of a worker already closed
+					continue;
+				}
+				if (result.error != null) {
+					liveWorkers = fail(worker, result.error, lostBatches, liveWorkers);
+					continue;
+				}
+				if (result.batch != worker.assignedBatch || result.stat.getNumberOfObs() != batchSize) {
+					liveWorkers = fail(worker, new IOException("Unexpected result for batch " + result.batch + "."),
+							lostBatches, liveWorkers);
+					continue;
+				}
+				worker.assignedBatch = -1;
+				idleWorkers.add(worker);
+				pendingResults.put(result.batch, result.stat);
+
+				// Merges results in batch order, applying the stopping rule each time target is reached
+				StatCollector next;
+				while (nextBatchToMerge < targetBatches && (next = pendingResults.remove(nextBatchToMerge)) != null) {
+					stat.merge(next);
+					if (++nextBatchToMerge == targetBatches) {
+						targetBatches = batchesFor(rule.getTargetNumberOfRuns(stat), batchSize);
+					}
+				}
+			}
+		} finally {
+			for (WorkerConnection worker : workers) {
+				worker.close();
+			}
+		}
+	}
+
+	/**
+	 * Closes a failed worker and keeps its batch to be sent again.
+	 *
+	 * @return number of workers still alive
+	 * @throws IOException if no worker is alive any more
+	 */
+	private static int fail(WorkerConnection worker, Exception error, ArrayDeque<Long> lostBatches, int liveWorkers)
+			throws IOException {
+		worker.failed = true;
+		worker.close();
+		if (worker.assignedBatch >= 0) {
+			lostBatches.add(worker.assignedBatch);
+			worker.assignedBatch = -1;
+		}
+		if (liveWorkers <= 1) {
+			throw new IOException("All workers failed.", error);
+		}
+		return liveWorkers - 1;
+	}
+
+	/**
+	 * Returns the number of batches needed to reach numberOfRuns runs.
+	 */
+	private static long batchesFor(long numberOfRuns, long batchSize) {
+		return (numberOfRuns + batchSize - 1) / batchSize;
+	}
+
+	/**
+	 * Waits for next batch result (or error of a worker).
+	 */
+	private static BatchResult takeResult(BlockingQueue<BatchResult> results) throws IOException {
+		try {
+			return results.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for workers.", e);
+		}
+	}
+
+	/**
+	 * Result of a batch (or error) received from a worker.
+	 */
+	private static final class BatchResult {
+		private final WorkerConnection worker;
+		private final long batch;
+		private final StatCollector stat;
+		private final Exception error;
+
+		private BatchResult(WorkerConnection worker, long batch, StatCollector stat, Exception error) {
+			this.worker = worker;
+			this.batch = batch;
+			this.stat = stat;
+			this.error = error;
+		}
+	}
+
+	/**
+	 * Connection to a worker. Results are read by a dedicated thread and put in a queue shared by all connections.
+	 * Only primitive values are exchanged (no Java serialization), and results are checked against the batch sent to
+	 * the worker, so that whoever connects to the coordinator's socket can at worst waste the runs of one batch.
+	 */
+	private static final class WorkerConnection {
+		private final Socket socket;
+		private final DataOutputStream out;
+		private volatile boolean closing;
+		// Batch sent to the worker and not answered yet (-1 if none), and whether the worker failed: only used by the
+		// coordinator thread
+		private long assignedBatch = -1;
+		private boolean failed;
+
+		private WorkerConnection(Socket socket, BlockingQueue<BatchResult> results) throws IOException {
+			this.socket = socket;
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+			Thread reader = new Thread(() -> {
+				try {
+					while (true) {
+						long batch = in.readLong();
+						long numberOfObs = in.readLong();
+						double average = in.readDouble();
+						double sumOfSquaredDeviations = in.readDouble();
+						StatCollector stat = new StatCollector();
+						stat.set(numberOfObs, average, sumOfSquaredDeviations);
+						results.add(new BatchResult(this, batch, stat, null));
+					}
+				} catch (IOException | IllegalArgumentException e) {
+					if (!closing) {
+						results.add(new BatchResult(this, -1, null, e));
+					}
+				}
+			}, "distributed-simulation-reader");
+			reader.setDaemon(true);
+			reader.start();
+		}
+
+		private void send(long batch, long seed, long runs) throws IOException {
+			assignedBatch = batch;
+			out.writeByte(TASK);
+			out.writeLong(batch);
+			out.writeLong(seed);
+			out.writeLong(runs);
+			out.flush();
+		}
+
+		private void close() {
+			closing = true;
+			try {
+				out.writeByte(STOP);
+				out.flush();
+			} catch (IOException e) {
+				// Worker is already gone
+			}
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// Nothing more to do
+			}
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package montecarlo;
+
+import statistics.StatCollector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.Socket;
+import java.util.Arrays;
+
+/**
+ * Worker process of a distributed simulation (see DistributedSimulation).
+ * <p>
+ * Connects to the coordinator, then repeatedly receives a batch (index, seed, number of runs), simulates it with its
+ * own random source and sends back the number of runs, average and sum of squared deviations of the batch, until the
+ * coordinator tells it to stop.
+ * <p>
+ * Usage: java montecarlo.DistributedWorker &lt;host&gt; &lt;port&gt; &lt;factory class&gt; [factory arguments...]
+ */
+public final class DistributedWorker {
+
+	/**
+	 * Private constructor. Makes it impossible to instantiate.
+	 */
+	private DistributedWorker() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println("Usage: DistributedWorker <host> <port> <factory class> [factory arguments...]");
+			System.exit(1);
+		}
+
+		ExperimentFactory factory = (ExperimentFactory) Class.forName(args[2]).getDeclaredConstructor().newInstance();
+		Experiment exp = factory.create(Arrays.copyOfRange(args, 3, args.length));
+
+		try (Socket socket = new Socket(args[0], Integer.parseInt(args[1]))) {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+			StatCollector stat = new StatCollector();
+			while (in.readByte() == DistributedSimulation.TASK) {
+				long batch = in.readLong();
+				long seed = in.readLong();
+				long runs = in.readLong();
+
+				stat.init();
+				MonteCarloSimulation.simulateNRuns(exp, runs, new XoshiroRandom(seed), stat);
+
+				out.writeLong(batch);
+				out.writeLong(stat.getNumberOfObs());
+				out.writeDouble(stat.getAverage());
+				out.writeDouble(stat.getSumOfSquaredDeviations());
+				out.flush();
+			}
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package montecarlo;
+
+/**
+ * Creates the experiment simulated by a DistributedWorker process. Implementations must have a public no-argument
+ * constructor, since workers instantiate them from their class name.
+ */
+public interface ExperimentFactory {
+
+	/**
+	 * Creates the experiment to be simulated.
+	 *
+	 * @param args arguments given to the worker process after the factory class name
+	 * @return experiment to be run by the worker
+	 * @throws Exception if the experiment cannot be created (for instance if its data cannot be read)
+	 */
+	Experiment create(String[] args) throws Exception;
+}
@@ -1,8 +1,16 @@
 package montecarlo;
 
-import statistics.InverseStdNormalCDF;
 import statistics.StatCollector;
+import statistics.VectorStatCollector;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Random;
 
 /**
@@ -33,6 +41,27 @@ public class MonteCarloSimulation {
 		}
 	}
 
+	/**
+	 * Simulates experiment exp n times, using rnd as a source of pseudo-random numbers and collect the results
+	 * (all performance measures at once) in stat.
+	 *
+	 * @param exp  experiment to be run each time
+	 * @param n    number of runs to be performed
+	 * @param rnd  random source to be used to simulate the experiment
+	 * @param stat collector to be used to collect the results of each experiment (of dimension
+	 *             exp.getNumberOfMetrics())
+	 */
+	public static void simulateNRuns(MultiExperiment exp,
+									 long n,
+									 Random rnd,
+									 VectorStatCollector stat) {
+		double[] results = new double[exp.getNumberOfMetrics()];
+		for (long run = 0; run < n; ++run) {
+			exp.execute(rnd, results);
+			stat.add(results);
+		}
+	}
+
 	/**
 	 * First simulates experiment exp initialNumberOfRuns times, then estimates the number of runs
 	 * needed for a 95% confidence interval half width no more than maxHalfWidth. If final C.I. is
@@ -56,28 +85,195 @@ public class MonteCarloSimulation {
 													long additionalNumberOfRuns,
 													Random rnd,
 													StatCollector stat) {
-		// 1) Dans une première phase Ninit simulations de l’expérience sont effectuées
-		simulateNRuns(exp, initialNumberOfRuns, rnd, stat);
+		simulate(exp, new CIHalfWidthRule(level, maxHalfWidth, initialNumberOfRuns, additionalNumberOfRuns), rnd, stat);
+	}
 
-		// 2) À partir des données récoltées une estimation du nombre N de réalisations à générer
-		//    afin d’obtenir un intervalle de confiance dont la demi-largeur ne dépasse pas (delta)max est
-		//    effectuée. Cette valeur de N est ensuite arrondie, vers le haut, au plus proche multiple
-		//    de Nadd.
-		double normalQuantile = InverseStdNormalCDF.getQuantile(0.5 - level / 2.0);
-		double estimationOfN = Math.pow(((normalQuantile * stat.getStandardDeviation()) / maxHalfWidth), 2);
-		estimationOfN = Math.ceil(estimationOfN / additionalNumberOfRuns) * additionalNumberOfRuns;
+	/**
+	 * Simulates experiment exp until the confidence interval half width is less than maxHalfWidth or until
+	 * timeBudgetNanos nanoseconds have elapsed, whichever comes first (see DeadlineRule). The cost of a run is
+	 * measured during the simulation, so that no run expected to end after the deadline is started.
+	 * <p>
+	 * Uses rnd as a source of pseudo-random numbers and collects the results in stat.
+	 *
+	 * @param exp                 experiment to be run each time
+	 * @param level               confidence level of the confidence interval
+	 * @param maxHalfWidth        maximal half width of the confidence interval (0 to run until the deadline)
+	 * @param initialNumberOfRuns number of runs to be performed before the C.I. is tested (if time allows)
+	 * @param timeBudgetNanos     maximal duration of the simulation in nanoseconds
+	 * @param rnd                 random source to be used to simulate the experiment
+	 * @param stat                collector to be used to collect the results of each experiment
+	 * @return the rule used, telling whether the deadline was reached and the measured cost of a run
+	 * @throws IllegalArgumentException if timeBudgetNanos is not positive or maxHalfWidth is negative
+	 */
+	public static DeadlineRule simulateWithinTimeBudget(Experiment exp,
+														double level,
+														double maxHalfWidth,
+														long initialNumberOfRuns,
+														long timeBudgetNanos,
+														Random rnd,
+														StatCollector stat) {
+		DeadlineRule rule = new DeadlineRule(timeBudgetNanos, level, maxHalfWidth, initialNumberOfRuns);
+		simulate(exp, rule, rnd, stat);
+		return rule;
+	}
 
-		// 3) La simulation est poursuivie jusqu’à atteindre N réalisations de l’expérience.
-		long numberOfRealisationToReachN = (long) estimationOfN - initialNumberOfRuns;
-		simulateNRuns(exp, numberOfRealisationToReachN, rnd, stat);
+	/**
+	 * Simulates experiment exp as many times as asked by rule, using rnd as a source of pseudo-random numbers and
+	 * collects the results in stat.
+	 * <p>
+	 * Once the simulation is over, rule.getMinimumNumberOfRuns(stat) gives the number of runs which would have been
+	 * enough, had the variance been known in advance.
+	 *
+	 * @param exp  experiment to be run each time
+	 * @param rule rule deciding the number of runs to be performed
+	 * @param rnd  random source to be used to simulate the experiment
+	 * @param stat collector to be used to collect the results of each experiment
+	 */
+	public static void simulate(Experiment exp,
+								StoppingRule rule,
+								Random rnd,
+								StatCollector stat) {
+		long target;
+		while ((target = rule.getTargetNumberOfRuns(stat)) > stat.getNumberOfObs()) {
+			simulateNRuns(exp, target - stat.getNumberOfObs(), rnd, stat);
+		}
+	}
 
-		// 4) Si la demi-largeur de l’intervalle de confiance, calculé sur la base de ces N réalisations,
-		//    est inférieure ou égale à (delta)max le processus s’arrête. Sinon Nadd simulations supplémentaires
-		//    sont effectuées avant de recalculer un nouvel intervalle de confiance et de retester
-		//    la condition d’arrêt. Ce processus est répété jusqu’à ce que la condition d’arrêt soit
-		//    satisfaite.
-		while (stat.getConfidenceIntervalHalfWidth(level) >= maxHalfWidth) {
-			simulateNRuns(exp, additionalNumberOfRuns, rnd, stat);
+	/**
+	 * Same as simulateTillGivenCIHalfWidth, but saves a checkpoint of the simulation (state of stat, of rnd and of
+	 * the stopping rule) to checkpointFile every checkpointInterval runs and at the end of the simulation.
+	 * <p>
+	 * If the simulation is interrupted, it can be resumed from its last checkpoint by resumeTillGivenCIHalfWidth,
+	 * which gives exactly the same final result as an uninterrupted simulation (provided exp does not keep any state
+	 * from one run to the other). stat should be empty when the simulation starts.
+	 *
+	 * @param exp                    experiment to be run each time
+	 * @param level                  confidence level of the confidence interval
+	 * @param maxHalfWidth           maximal half width of the confidence interval
+	 * @param initialNumberOfRuns    initial number of runs to be performed
+	 * @param additionalNumberOfRuns additional number of runs to be performed if C.I. is too wide
+	 * @param rnd                    random source to be used to simulate the experiment (must be serializable)
+	 * @param stat                   collector to be used to collect the results of each experiment
+	 * @param checkpointFile         file the checkpoints are written to (replaced at each checkpoint)
+	 * @param checkpointInterval     number of runs between two checkpoints
+	 * @throws IOException              if a checkpoint cannot be written
+	 * @throws IllegalArgumentException if checkpointInterval is not positive
+	 */
+	public static void simulateTillGivenCIHalfWidth(Experiment exp,
+													double level,
+													double maxHalfWidth,
+													long initialNumberOfRuns,
+													long additionalNumberOfRuns,
+													Random rnd,
+													StatCollector stat,
+													Path checkpointFile,
+													long checkpointInterval) throws IOException {
+		CIHalfWidthRule rule = new CIHalfWidthRule(level, maxHalfWidth, initialNumberOfRuns, additionalNumberOfRuns);
+		simulate(exp, rule, rnd, stat, checkpointFile, checkpointInterval);
+	}
+
+	/**
+	 * Simulates experiment exp as many times as asked by rule, using rnd as a source of pseudo-random numbers and
+	 * collects the results (all performance measures at once) in stat. The rule is applied to the collector of the
+	 * primary performance measure.
+	 *
+	 * @param exp           experiment to be run each time
+	 * @param primaryMetric index of the performance measure the rule is applied to
+	 * @param rule          rule deciding the number of runs to be performed
+	 * @param rnd           random source to be used to simulate the experiment
+	 * @param stat          collector to be used to collect the results of each experiment (of dimension
+	 *                      exp.getNumberOfMetrics())
+	 */
+	public static void simulate(MultiExperiment exp,
+								int primaryMetric,
+								StoppingRule rule,
+								Random rnd,
+								VectorStatCollector stat) {
+		StatCollector primaryStat = stat.getStatCollector(primaryMetric);
+		long target;
+		while ((target = rule.getTargetNumberOfRuns(primaryStat)) > primaryStat.getNumberOfObs()) {
+			simulateNRuns(exp, target - primaryStat.getNumberOfObs(), rnd, stat);
+		}
+	}
+
+	/**
+	 * Same as simulate, but saves a checkpoint of the simulation (state of stat, of rnd and of rule) to checkpointFile
+	 * every checkpointInterval runs and at the end of the simulation. See simulateTillGivenCIHalfWidth with
+	 * checkpoints for details.
+	 *
+	 * @param exp                experiment to be run each time
+	 * @param rule               rule deciding the number of runs to be performed
+	 * @param rnd                random source to be used to simulate the experiment (must be serializable)
+	 * @param stat               collector to be used to collect the results of each experiment
+	 * @param checkpointFile     file the checkpoints are written to (replaced at each checkpoint)
+	 * @param checkpointInterval number of runs between two checkpoints
+	 * @throws IOException              if a checkpoint cannot be written
+	 * @throws IllegalArgumentException if checkpointInterval is not positive
+	 */
+	public static void simulate(Experiment exp,
+								StoppingRule rule,
+								Random rnd,
+								StatCollector stat,
+								Path checkpointFile,
+								long checkpointInterval) throws IOException {
+		if (checkpointInterval <= 0) {
+			throw new IllegalArgumentException("Checkpoint interval should be positive.");
+		}
+
+		long target;
+		while ((target = rule.getTargetNumberOfRuns(stat)) > stat.getNumberOfObs()) {
+			long runs = Math.min(target - stat.getNumberOfObs(), checkpointInterval);
+			simulateNRuns(exp, runs, rnd, stat);
+			saveCheckpoint(rule, rnd, stat, checkpointFile);
+		}
+		saveCheckpoint(rule, rnd, stat, checkpointFile);
+	}
+
+	/**
+	 * Resumes a simulation started by simulateTillGivenCIHalfWidth (or simulate) with checkpoints, from the last
+	 * checkpoint saved in checkpointFile. Results are collected in stat, which is first reset to its state at the
+	 * checkpoint.
+	 * <p>
+	 * Checkpoints keep being saved to checkpointFile every checkpointInterval runs.
+	 *
+	 * @param exp                experiment to be run each time (same as in the interrupted simulation)
+	 * @param checkpointFile     file the checkpoints are read from and written to
+	 * @param checkpointInterval number of runs between two checkpoints
+	 * @param stat               collector to be used to collect the results of each experiment
+	 * @throws IOException              if the checkpoint cannot be read or a new checkpoint cannot be written
+	 * @throws IllegalArgumentException if checkpointInterval is not positive
+	 */
+	public static void resumeTillGivenCIHalfWidth(Experiment exp,
+												  Path checkpointFile,
+												  long checkpointInterval,
+												  StatCollector stat) throws IOException {
+		StoppingRule rule;
+		Random rnd;
+		try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(checkpointFile)))) {
+			rule = (StoppingRule) in.readObject();
+			rnd = (Random) in.readObject();
+			stat.init();
+			stat.merge((StatCollector) in.readObject());
+		} catch (ClassNotFoundException | ClassCastException e) {
+			throw new IOException("Invalid checkpoint file.", e);
+		}
+		simulate(exp, rule, rnd, stat, checkpointFile, checkpointInterval);
+	}
+
+	/**
+	 * Writes the state of a simulation to checkpointFile. The file is replaced atomically, so that it always contains
+	 * a complete checkpoint.
+	 */
+	private static void saveCheckpoint(StoppingRule rule,
+									   Random rnd,
+									   StatCollector stat,
+									   Path checkpointFile) throws IOException {
+		Path tmpFile = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+		try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+			out.writeObject(rule);
+			out.writeObject(rnd);
+			out.writeObject(stat);
 		}
+		Files.move(tmpFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
 	}
 }
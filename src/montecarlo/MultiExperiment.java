@@ -0,0 +1,48 @@
+package montecarlo;
+
+import java.util.Random;
+
+/**
+ * Classes to be used for Monte Carlo simulations estimating several performance measures at once should implement
+ * this interface.
+ * <p>
+ * Results are written into an array provided (and reused from one run to the other) by the caller, so that no object
+ * is allocated per run.
+ */
+public interface MultiExperiment {
+
+	/**
+	 * Returns the number of performance measures computed by each run of the experiment.
+	 *
+	 * @return number of metrics
+	 */
+	int getNumberOfMetrics();
+
+	/**
+	 * Simulates the experiment once, using rnd as a source of pseudo-random numbers.
+	 *
+	 * @param rnd     random source to be used to simulate the experiment
+	 * @param results array whose first getNumberOfMetrics() entries receive the realization of each performance measure
+	 */
+	void execute(Random rnd, double[] results);
+
+	/**
+	 * Returns a view of a single performance measure experiment as a MultiExperiment with one metric.
+	 *
+	 * @param exp experiment to be adapted
+	 * @return experiment writing the result of exp in results[0]
+	 */
+	static MultiExperiment of(Experiment exp) {
+		return new MultiExperiment() {
+			@Override
+			public int getNumberOfMetrics() {
+				return 1;
+			}
+
+			@Override
+			public void execute(Random rnd, double[] results) {
+				results[0] = exp.execute(rnd);
+			}
+		};
+	}
+}
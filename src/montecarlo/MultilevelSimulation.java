@@ -0,0 +1,227 @@
+package montecarlo;
+
+import statistics.InverseStdNormalCDF;
+import statistics.StatCollector;
+import statistics.VectorStatCollector;
+
+import java.util.Random;
+
+/**
+ * This class provides a two-level Monte Carlo estimator, for experiments whose result (fine level) is strongly
+ * correlated with a much cheaper approximation (coarse level) computed on the same random input.
+ * <p>
+ * The expectation of the fine level is estimated as the average of many independent runs of the coarse level, plus
+ * the average of fewer coupled runs giving the difference between both levels on the same input. The coarse level is
+ * weighted by the coefficient b = Cov(coarse, fine) / Var(coarse) estimated on the coupled runs, which minimizes the
+ * variance of the differences (fine - b coarse) as for a control variate; b = 1 would give the classical multilevel
+ * estimator, whose differences are more variable than the fine level itself unless both levels are very correlated.
+ * <p>
+ * The numbers of runs of each kind are chosen to minimize the simulation time needed for the asked confidence
+ * interval, given the variances and the costs (measured duration of runs) estimated on the fly.
+ */
+public class MultilevelSimulation {
+
+	/**
+	 * Private constructor. Makes it impossible to instantiate.
+	 */
+	private MultilevelSimulation() {
+	}
+
+	/**
+	 * First simulates initialNumberOfRuns runs of each level, then estimates the optimal numbers of runs of both
+	 * levels for a confidence interval half width no more than maxHalfWidth, simulates the missing runs and repeats
+	 * the process until the estimated numbers of runs are reached.
+	 *
+	 * @param coarse              coarse level
+	 * @param coupled             experiment giving the coarse level (metric 0) and the fine level (metric 1) computed
+	 *                            on the same random input
+	 * @param level               confidence level of the confidence interval
+	 * @param maxHalfWidth        maximal half width of the confidence interval
+	 * @param initialNumberOfRuns initial number of runs of each level (at least 2)
+	 * @param rnd                 random source to be used to simulate the experiments
+	 * @return the estimate of the expectation of the fine level, with the statistics of both levels
+	 * @throws IllegalArgumentException if maxHalfWidth is not positive or initialNumberOfRuns is less than 2
+	 */
+	public static Estimate simulateTillGivenCIHalfWidth(Experiment coarse,
+														MultiExperiment coupled,
+														double level,
+														double maxHalfWidth,
+														long initialNumberOfRuns,
+														Random rnd) {
+		if (maxHalfWidth <= 0 || initialNumberOfRuns < 2) {
+			throw new IllegalArgumentException("Half width should be positive and initial number of runs at least 2.");
+		}
+		double quantile = InverseStdNormalCDF.getQuantile(0.5 - level / 2.0);
+		Estimate estimate = new Estimate(level);
+
+		long coarseTarget = initialNumberOfRuns;
+		long coupledTarget = initialNumberOfRuns;
+		while (coarseTarget > estimate.coarseStat.getNumberOfObs()
+				|| coupledTarget > estimate.coupledStat.getNumberOfObs()) {
+			estimate.simulate(coarse, coarseTarget - estimate.coarseStat.getNumberOfObs(), rnd);
+			estimate.simulate(coupled, coupledTarget - estimate.coupledStat.getNumberOfObs(), rnd);
+
+			// N_l = (z / h)^2 sqrt(V_l / c_l) (sqrt(V_0 c_0) + sqrt(V_1 c_1)) minimizes the cost of a given variance
+			double b = estimate.getCoefficient();
+			double coarseWeight = Math.sqrt(b * b * estimate.getCoarseVariance() * estimate.getCoarseCost());
+			double coupledWeight = Math.sqrt(estimate.getCorrectionVariance() * estimate.getCoupledCost());
+			double factor = (quantile / maxHalfWidth) * (quantile / maxHalfWidth) * (coarseWeight + coupledWeight);
+			coarseTarget = Math.max(coarseTarget, runsFor(factor * coarseWeight / estimate.getCoarseCost()));
+			coupledTarget = Math.max(coupledTarget, runsFor(factor * coupledWeight / estimate.getCoupledCost()));
+		}
+		return estimate;
+	}
+
+	/**
+	 * Rounds up a number of runs (NaN if variances could not be estimated).
+	 */
+	private static long runsFor(double numberOfRuns) {
+		return Double.isNaN(numberOfRuns) ? 0 : (long) Math.ceil(numberOfRuns);
+	}
+
+	/**
+	 * Result of a two-level simulation.
+	 */
+	public static final class Estimate {
+		private final double level;
+		// Results of the coarse level runs
+		private final StatCollector coarseStat = new StatCollector();
+		// Results of the coupled runs (coarse level, fine level)
+		private final VectorStatCollector coupledStat = new VectorStatCollector(2);
+		// Total duration of the runs of each kind (in nanoseconds)
+		private long coarseNanos;
+		private long coupledNanos;
+
+		private Estimate(double level) {
+			this.level = level;
+		}
+
+		private void simulate(Experiment coarse, long n, Random rnd) {
+			long start = System.nanoTime();
+			MonteCarloSimulation.simulateNRuns(coarse, n, rnd, coarseStat);
+			coarseNanos += System.nanoTime() - start;
+		}
+
+		private void simulate(MultiExperiment coupled, long n, Random rnd) {
+			long start = System.nanoTime();
+			MonteCarloSimulation.simulateNRuns(coupled, n, rnd, coupledStat);
+			coupledNanos += System.nanoTime() - start;
+		}
+
+		/**
+		 * Returns the estimate of the expectation of the fine level.
+		 *
+		 * @return b times the average of the coarse level, plus the average of the differences (fine - b coarse)
+		 */
+		public double getAverage() {
+			double b = getCoefficient();
+			return b * coarseStat.getAverage()
+					+ coupledStat.getStatCollector(1).getAverage() - b * coupledStat.getStatCollector(0).getAverage();
+		}
+
+		/**
+		 * Returns the estimated variance of getAverage().
+		 *
+		 * @return variance of the estimator
+		 */
+		public double getVarianceOfAverage() {
+			double b = getCoefficient();
+			return b * b * getCoarseVariance() / coarseStat.getNumberOfObs()
+					+ getCorrectionVariance() / coupledStat.getNumberOfObs();
+		}
+
+		/**
+		 * Returns the weight b of the coarse level, estimated on the coupled runs (1 if it cannot be estimated).
+		 *
+		 * @return Cov(coarse, fine) / Var(coarse)
+		 */
+		public double getCoefficient() {
+			double b = coupledStat.getCovariance(0, 1) / coupledStat.getCovariance(0, 0);
+			return Double.isNaN(b) || Double.isInfinite(b) ? 1.0 : b;
+		}
+
+		/**
+		 * Returns the half width of the confidence interval of the level given to the simulation.
+		 *
+		 * @return half width of the confidence interval
+		 */
+		public double getConfidenceIntervalHalfWidth() {
+			return InverseStdNormalCDF.getQuantile(0.5 - level / 2.0) * Math.sqrt(getVarianceOfAverage());
+		}
+
+		/**
+		 * Returns the number of runs of the coarse level alone.
+		 *
+		 * @return number of coarse runs
+		 */
+		public long getNumberOfCoarseRuns() {
+			return coarseStat.getNumberOfObs();
+		}
+
+		/**
+		 * Returns the number of coupled runs.
+		 *
+		 * @return number of coupled runs
+		 */
+		public long getNumberOfCoupledRuns() {
+			return coupledStat.getNumberOfObs();
+		}
+
+		/**
+		 * Returns the statistics of the runs of the coarse level alone.
+		 *
+		 * @return collector of the coarse runs
+		 */
+		public StatCollector getCoarseStatCollector() {
+			return coarseStat;
+		}
+
+		/**
+		 * Returns the statistics of the coupled runs (coarse level, fine level).
+		 *
+		 * @return collector of the coupled runs
+		 */
+		public VectorStatCollector getCoupledStatCollector() {
+			return coupledStat;
+		}
+
+		/**
+		 * Returns the average duration of a coarse run, in nanoseconds.
+		 *
+		 * @return cost of a coarse run
+		 */
+		public double getCoarseCost() {
+			return (double) coarseNanos / coarseStat.getNumberOfObs();
+		}
+
+		/**
+		 * Returns the average duration of a coupled run, in nanoseconds.
+		 *
+		 * @return cost of a coupled run
+		 */
+		public double getCoupledCost() {
+			return (double) coupledNanos / coupledStat.getNumberOfObs();
+		}
+
+		/**
+		 * Returns the estimated ratio between the duration of a plain simulation of the fine level (each run costing
+		 * a coupled run) reaching the same variance and the duration of this simulation.
+		 *
+		 * @return estimated speedup over plain Monte Carlo
+		 */
+		public double getEstimatedSpeedup() {
+			double plainRuns = coupledStat.getCovariance(1, 1) / getVarianceOfAverage();
+			return plainRuns * getCoupledCost() / (coarseNanos + coupledNanos);
+		}
+
+		private double getCoarseVariance() {
+			return coarseStat.getVariance();
+		}
+
+		private double getCorrectionVariance() {
+			double b = getCoefficient();
+			return coupledStat.getCovariance(1, 1) + b * b * coupledStat.getCovariance(0, 0)
+					- 2.0 * b * coupledStat.getCovariance(0, 1);
+		}
+	}
+}
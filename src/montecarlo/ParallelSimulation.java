@@ -0,0 +1,157 @@
+package montecarlo;
+
+import statistics.StatCollector;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class provides methods for Monte Carlo simulations whose runs are performed by the tasks of an executor.
+ * <p>
+ * Runs are grouped in batches, each batch being simulated with its own random source (see
+ * DistributedSimulation.getBatchSeed) and batch results being merged in batch order: results only depend on the seed
+ * and the batch size, not on the executor nor on the concurrency limit.
+ * <p>
+ * CPU-bound experiments are best run on a fork-join pool (see simulate without executor). I/O-bound experiments may
+ * rather be given an executor creating a thread per task with a high concurrency limit (on JDK 21 and later,
+ * Executors.newVirtualThreadPerTaskExecutor()). The experiment must be safe to use from several threads at once.
+ */
+public class ParallelSimulation {
+	/**
+	 * Private constructor. Makes it impossible to instantiate.
+	 */
+	private ParallelSimulation() {
+	}
+
+	/**
+	 * Simulates exp on the common fork-join pool, with one batch per available processor at most in progress, until
+	 * rule is satisfied.
+	 *
+	 * @param exp       experiment to be run each time
+	 * @param rule      rule deciding the number of runs to be performed
+	 * @param batchSize number of runs per batch
+	 * @param seed      seed of the simulation
+	 * @param stat      collector to be used to collect the results of each experiment
+	 * @throws InterruptedException if the current thread is interrupted while waiting for a batch
+	 */
+	public static void simulate(Experiment exp,
+								StoppingRule rule,
+								long batchSize,
+								long seed,
+								StatCollector stat) throws InterruptedException {
+		simulate(exp, rule, batchSize, seed, ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism(), stat);
+	}
+
+	/**
+	 * Simulates batches of batchSize runs of exp on executor, with at most maxConcurrency batches in progress, until
+	 * rule, applied to the merged results, is satisfied. The number of runs asked by the rule is rounded up to a
+	 * multiple of the batch size.
+	 * <p>
+	 * To keep the executor busy, a few batches are simulated ahead of the rule's decisions. Once the rule is
+	 * satisfied (or if a batch fails), batches still in progress are cancelled: their tasks stop before their next
+	 * run (a shared flag is checked between runs, since fork-join pools do not interrupt cancelled tasks). This method
+	 * does not wait for them, so a task may still be finishing its current run when it returns. The executor is not
+	 * shut down.
+	 * <p>
+	 * A batch whose thread is interrupted (for instance by executor.shutdownNow()) is never merged partially: this
+	 * method then throws CancellationException.
+	 *
+	 * @param exp            experiment to be run each time
+	 * @param rule           rule deciding the number of runs to be performed
+	 * @param batchSize      number of runs per batch
+	 * @param seed           seed of the simulation
+	 * @param executor       executor running the batches
+	 * @param maxConcurrency maximal number of batches in progress at the same time
+	 * @param stat           collector to be used to collect the results of each experiment
+	 * @throws InterruptedException  if the current thread is interrupted while waiting for a batch
+	 * @throws CancellationException if a batch is interrupted or cancelled before its last run
+	 */
+	public static void simulate(Experiment exp,
+								StoppingRule rule,
+								long batchSize,
+								long seed,
+								ExecutorService executor,
+								int maxConcurrency,
+								StatCollector stat) throws InterruptedException {
+		if (maxConcurrency <= 0 || batchSize <= 0) {
+			throw new IllegalArgumentException("Concurrency limit and batch size should be positive.");
+		}
+
+		// Batches in progress, in batch order (the head being batch nextBatchToMerge)
+		ArrayDeque<Future<StatCollector>> inProgress = new ArrayDeque<>();
+		// Set once the simulation is over, so that batches still in progress stop
+		AtomicBoolean cancelled = new AtomicBoolean();
+		try {
+			long nextBatch = 0;         // index of next batch to be submitted
+			long nextBatchToMerge = 0;  // index of next batch to be merged into stat
+			long targetBatches = batchesFor(rule.getTargetNumberOfRuns(stat), batchSize);
+
+			while (nextBatchToMerge < targetBatches) {
+				// Keeps the executor busy, simulating a few batches ahead of target
+				while (inProgress.size() < maxConcurrency && nextBatch < targetBatches + maxConcurrency - 1) {
+					long batchSeed = DistributedSimulation.getBatchSeed(seed, nextBatch);
+					inProgress.add(executor.submit(() -> runBatch(exp, batchSize, batchSeed, cancelled)));
+					++nextBatch;
+				}
+
+				// Merges results in batch order, applying the stopping rule each time target is reached
+				stat.merge(getResult(inProgress.poll()));
+				if (++nextBatchToMerge == targetBatches) {
+					targetBatches = batchesFor(rule.getTargetNumberOfRuns(stat), batchSize);
+				}
+			}
+		} finally {
+			cancelled.set(true);
+			for (Future<StatCollector> batch : inProgress) {
+				batch.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Simulates a batch, stopping early if the simulation is cancelled or the current thread is interrupted. A batch
+	 * stopped early throws CancellationException rather than returning the results of part of its runs.
+	 */
+	private static StatCollector runBatch(Experiment exp, long batchSize, long batchSeed, AtomicBoolean cancelled) {
+		StatCollector batchStat = new StatCollector();
+		Random rnd = new XoshiroRandom(batchSeed);
+		for (long run = 0; run < batchSize; ++run) {
+			if (cancelled.get() || Thread.currentThread().isInterrupted()) {
+				throw new CancellationException("Batch stopped before its last run.");
+			}
+			batchStat.add(exp.execute(rnd));
+		}
+		return batchStat;
+	}
+
+	/**
+	 * Waits for a batch result, rethrowing the error of a failed batch.
+	 */
+	private static StatCollector getResult(Future<StatCollector> batch) throws InterruptedException {
+		try {
+			return batch.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException("Batch failed.", cause);
+		}
+	}
+
+	/**
+	 * Returns the number of batches needed to reach numberOfRuns runs.
+	 */
+	private static long batchesFor(long numberOfRuns, long batchSize) {
+		return (numberOfRuns + batchSize - 1) / batchSize;
+	}
+}
@@ -0,0 +1,69 @@
+package montecarlo;
+
+import statistics.InverseStdNormalCDF;
+import statistics.StatCollector;
+
+/**
+ * Stopping rule aiming at a confidence interval half width no more than maxHalfWidth, which re-estimates the number
+ * of runs needed after each step.
+ * <p>
+ * First asks for initialNumberOfRuns runs. Then, as long as the C.I. is too wide, estimates from the current standard
+ * deviation the number N of runs needed and asks for N runs (but at least minimumIncrement more runs than already
+ * performed, so that the simulation progresses even when the estimate is too low).
+ */
+public class ReEstimatingRule implements StoppingRule {
+
+	private static final long serialVersionUID = 1L;
+
+	private final double level;
+	private final double maxHalfWidth;
+	private final long initialNumberOfRuns;
+	private final long minimumIncrement;
+	// Number of runs asked by the last call to getTargetNumberOfRuns (0 before first call)
+	private long targetNumberOfRuns;
+
+	/**
+	 * Creates a new rule.
+	 *
+	 * @param level               confidence level of the confidence interval
+	 * @param maxHalfWidth        maximal half width of the confidence interval
+	 * @param initialNumberOfRuns initial number of runs to be performed
+	 * @param minimumIncrement    minimal number of additional runs to be performed if C.I. is too wide
+	 * @throws IllegalArgumentException if minimumIncrement is not positive
+	 */
+	public ReEstimatingRule(double level, double maxHalfWidth, long initialNumberOfRuns, long minimumIncrement) {
+		if (minimumIncrement <= 0) {
+			throw new IllegalArgumentException("Minimum increment should be positive.");
+		}
+		this.level = level;
+		this.maxHalfWidth = maxHalfWidth;
+		this.initialNumberOfRuns = initialNumberOfRuns;
+		this.minimumIncrement = minimumIncrement;
+	}
+
+	@Override
+	public long getTargetNumberOfRuns(StatCollector stat) {
+		long numberOfRuns = stat.getNumberOfObs();
+
+		// Current step is not over
+		if (numberOfRuns < targetNumberOfRuns) {
+			return targetNumberOfRuns;
+		}
+
+		if (targetNumberOfRuns == 0 && numberOfRuns < initialNumberOfRuns) {
+			targetNumberOfRuns = initialNumberOfRuns;
+		} else if (!(stat.getConfidenceIntervalHalfWidth(level) >= maxHalfWidth)) {
+			// C.I. is narrow enough (or cannot be computed)
+			targetNumberOfRuns = numberOfRuns;
+		} else {
+			targetNumberOfRuns = Math.max(getMinimumNumberOfRuns(stat), numberOfRuns + minimumIncrement);
+		}
+		return targetNumberOfRuns;
+	}
+
+	@Override
+	public long getMinimumNumberOfRuns(StatCollector stat) {
+		return CIHalfWidthRule.minimumNumberOfRuns(InverseStdNormalCDF.getQuantile(0.5 - level / 2.0),
+				stat.getStandardDeviation(), maxHalfWidth);
+	}
+}
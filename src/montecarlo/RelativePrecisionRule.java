@@ -0,0 +1,89 @@
+package montecarlo;
+
+import statistics.InverseStdNormalCDF;
+import statistics.StatCollector;
+
+/**
+ * Stopping rule aiming at a confidence interval half width no more than maxRelativeHalfWidth times the absolute value
+ * of the mean, re-estimating the number of runs needed after each step.
+ * <p>
+ * First asks for initialNumberOfRuns runs. Then, as long as the relative half width of the C.I. is too large,
+ * estimates from the current mean and standard deviation the number N of runs needed and asks for N runs (but at least
+ * minimumIncrement more runs than already performed).
+ * <p>
+ * A C.I. of half width 0 (all results equal, for instance all 0) is narrow enough. A mean of exactly 0 with a C.I.
+ * of positive half width makes the relative precision unreachable, which is reported by an exception.
+ */
+public class RelativePrecisionRule implements StoppingRule {
+
+	private static final long serialVersionUID = 1L;
+
+	private final double level;
+	private final double maxRelativeHalfWidth;
+	private final long initialNumberOfRuns;
+	private final long minimumIncrement;
+	// Number of runs asked by the last call to getTargetNumberOfRuns (0 before first call)
+	private long targetNumberOfRuns;
+
+	/**
+	 * Creates a new rule.
+	 *
+	 * @param level                confidence level of the confidence interval
+	 * @param maxRelativeHalfWidth maximal ratio between the half width of the C.I. and the absolute value of the mean
+	 * @param initialNumberOfRuns  initial number of runs to be performed
+	 * @param minimumIncrement     minimal number of additional runs to be performed if C.I. is too wide
+	 * @throws IllegalArgumentException if minimumIncrement is not positive
+	 */
+	public RelativePrecisionRule(double level, double maxRelativeHalfWidth, long initialNumberOfRuns,
+								 long minimumIncrement) {
+		if (minimumIncrement <= 0) {
+			throw new IllegalArgumentException("Minimum increment should be positive.");
+		}
+		this.level = level;
+		this.maxRelativeHalfWidth = maxRelativeHalfWidth;
+		this.initialNumberOfRuns = initialNumberOfRuns;
+		this.minimumIncrement = minimumIncrement;
+	}
+
+	/**
+	 * Returns the total number of runs to be reached before this rule is called again.
+	 *
+	 * @param stat collector of the results of the runs performed so far
+	 * @return number of runs to be reached
+	 * @throws IllegalStateException if the mean of the results is 0 while their C.I. has a positive half width
+	 */
+	@Override
+	public long getTargetNumberOfRuns(StatCollector stat) {
+		long numberOfRuns = stat.getNumberOfObs();
+
+		// Current step is not over
+		if (numberOfRuns < targetNumberOfRuns) {
+			return targetNumberOfRuns;
+		}
+
+		if (targetNumberOfRuns == 0 && numberOfRuns < initialNumberOfRuns) {
+			targetNumberOfRuns = initialNumberOfRuns;
+		} else {
+			double halfWidth = stat.getConfidenceIntervalHalfWidth(level);
+			if (!(halfWidth > 0 && halfWidth >= maxRelativeHalfWidth * Math.abs(stat.getAverage()))) {
+				// C.I. is narrow enough, reduced to a point, or cannot be computed
+				targetNumberOfRuns = numberOfRuns;
+			} else if (stat.getAverage() == 0) {
+				throw new IllegalStateException("Relative precision cannot be reached for a mean of 0.");
+			} else {
+				targetNumberOfRuns = Math.max(getMinimumNumberOfRuns(stat), numberOfRuns + minimumIncrement);
+			}
+		}
+		return targetNumberOfRuns;
+	}
+
+	@Override
+	public long getMinimumNumberOfRuns(StatCollector stat) {
+		double maxHalfWidth = maxRelativeHalfWidth * Math.abs(stat.getAverage());
+		if (!(maxHalfWidth > 0)) {
+			return -1;
+		}
+		return CIHalfWidthRule.minimumNumberOfRuns(InverseStdNormalCDF.getQuantile(0.5 - level / 2.0),
+				stat.getStandardDeviation(), maxHalfWidth);
+	}
+}
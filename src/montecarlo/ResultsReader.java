@@ -0,0 +1,121 @@
+package montecarlo;
+
+import statistics.StatCollector;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Reads the replication records written by a ResultsSink, one record at a time.
+ * <p>
+ * Usage: call next() until it returns false, reading the fields of each record with the getters.
+ */
+public class ResultsReader implements AutoCloseable {
+
+	private final DataInputStream in;
+	// Fields of current record
+	private long sequenceNumber;
+	private int sampleSize;
+	private double value;
+	private long elapsedNanos;
+
+	/**
+	 * Opens a results file.
+	 *
+	 * @param file file written by a ResultsSink
+	 * @throws IOException if file cannot be read or is not a results file
+	 */
+	public ResultsReader(Path file) throws IOException {
+		in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+		try {
+			if (in.readInt() != ResultsSink.MAGIC || in.readInt() != ResultsSink.VERSION) {
+				throw new IOException("Invalid results file.");
+			}
+		} catch (IOException e) {
+			in.close();
+			throw (e instanceof EOFException) ? new IOException("Invalid results file.") : e;
+		}
+	}
+
+	/**
+	 * Moves to next record.
+	 *
+	 * @return false if there is no more record
+	 * @throws IOException if the file cannot be read or ends with an incomplete record
+	 */
+	public boolean next() throws IOException {
+		try {
+			sequenceNumber = in.readLong();
+		} catch (EOFException e) {
+			return false;
+		}
+		try {
+			sampleSize = in.readInt();
+			value = in.readDouble();
+			elapsedNanos = in.readLong();
+		} catch (EOFException e) {
+			throw new IOException("Incomplete record at end of results file.");
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the sequence number of current record (see ResultsSink).
+	 *
+	 * @return index of the record in the file
+	 */
+	public long getSequenceNumber() {
+		return sequenceNumber;
+	}
+
+	/**
+	 * Returns the sample size of current record.
+	 *
+	 * @return size of the simulated instance
+	 */
+	public int getSampleSize() {
+		return sampleSize;
+	}
+
+	/**
+	 * Returns the observed value of current record.
+	 *
+	 * @return realization of the performance measure
+	 */
+	public double getValue() {
+		return value;
+	}
+
+	/**
+	 * Returns the duration of the replication of current record.
+	 *
+	 * @return duration in nanoseconds
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Adds the observed value of every record of a results file to stat, in file order.
+	 *
+	 * @param file file written by a ResultsSink
+	 * @param stat collector the values are added to
+	 * @throws IOException if file cannot be read or is not a results file
+	 */
+	public static void readInto(Path file, StatCollector stat) throws IOException {
+		try (ResultsReader reader = new ResultsReader(file)) {
+			while (reader.next()) {
+				stat.add(reader.getValue());
+			}
+		}
+	}
+}
@@ -0,0 +1,220 @@
+package montecarlo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Appends one record per replication (sequence number, sample size, observed value, elapsed time) to a compact
+ * binary file, so that the distribution of the observations can be inspected after a simulation.
+ * <p>
+ * The sequence number is the index of the record in the file: it gives the order in which the records were
+ * appended, which, with a parallel simulation, depends on the scheduling of the threads.
+ * <p>
+ * Records are accumulated in memory buffers which are written to the file by a background thread. At most
+ * MAX_BUFFERS buffers are allocated: when they are all full, simulation threads wait for the writer.
+ * <p>
+ * The sink is thread safe. Files can be read back with ResultsReader.
+ */
+public class ResultsSink implements AutoCloseable {
+
+	// File header: magic number and format version
+	static final int MAGIC = 0x4D435253;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 2 * Integer.BYTES;
+	// Size of one record in bytes: long sequence number, int sample size, double value, long elapsed time
+	static final int RECORD_SIZE = Long.BYTES + Integer.BYTES + Double.BYTES + Long.BYTES;
+
+	/**
+	 * Maximal number of buffers of a sink, including the one being filled.
+	 */
+	public static final int MAX_BUFFERS = 4;
+
+	// Default number of records per buffer
+	private static final int DEFAULT_BATCH_SIZE = 4096;
+	// Marker telling the writer thread to stop
+	private static final ByteBuffer END_OF_STREAM = ByteBuffer.allocate(0);
+
+	private final FileChannel channel;
+	private final int bufferSize;
+	// Full buffers waiting to be written, and written buffers ready to be reused
+	private final BlockingQueue<ByteBuffer> fullBuffers = new LinkedBlockingQueue<>();
+	private final BlockingQueue<ByteBuffer> freeBuffers = new LinkedBlockingQueue<>();
+	private final Thread writer;
+	// Buffer currently filled by the simulation threads, number of allocated buffers and sequence number of next
+	// record (guarded by this)
+	private ByteBuffer current;
+	private int numberOfBuffers;
+	private long nextSequenceNumber;
+	private boolean closed;
+	// First error encountered by the writer thread
+	private volatile IOException writeError;
+
+	/**
+	 * Opens a sink appending to file (created if it does not exist) with default batch size.
+	 *
+	 * @param file file to append records to
+	 * @throws IOException if file cannot be opened, or is not empty and not a complete results file
+	 */
+	public ResultsSink(Path file) throws IOException {
+		this(file, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Opens a sink appending to file (created if it does not exist). A non empty file should have been written by a
+	 * ResultsSink of the same format version; the sequence numbers of the new records follow its last record.
+	 *
+	 * @param file      file to append records to
+	 * @param batchSize number of records written at once by the background thread
+	 * @throws IOException              if file cannot be opened, or is not empty and not a complete results file
+	 * @throws IllegalArgumentException if batchSize is not positive
+	 */
+	public ResultsSink(Path file, int batchSize) throws IOException {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("Batch size should be positive.");
+		}
+		bufferSize = batchSize * RECORD_SIZE;
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			long size = channel.size();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			if (size == 0) {
+				header.putInt(MAGIC).putInt(VERSION);
+				header.flip();
+				while (header.hasRemaining()) {
+					channel.write(header);
+				}
+			} else {
+				// Refuses to append to anything else than complete records of the same format
+				if (size < HEADER_SIZE || (size - HEADER_SIZE) % RECORD_SIZE != 0) {
+					throw new IOException("Invalid results file.");
+				}
+				while (header.hasRemaining()) {
+					if (channel.read(header, header.position()) < 0) {
+						throw new IOException("Invalid results file.");
+					}
+				}
+				header.flip();
+				if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+					throw new IOException("Invalid results file.");
+				}
+				nextSequenceNumber = (size - HEADER_SIZE) / RECORD_SIZE;
+				channel.position(size);
+			}
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		current = ByteBuffer.allocate(bufferSize);
+		numberOfBuffers = 1;
+
+		writer = new Thread(this::writeBuffers, "results-sink-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Appends the record of one replication, waiting for the writer thread if all buffers are full.
+	 *
+	 * @param sampleSize   size of the simulated instance
+	 * @param value        realization of the performance measure
+	 * @param elapsedNanos duration of the replication in nanoseconds
+	 * @return sequence number of the record
+	 * @throws IllegalStateException if the sink is closed
+	 */
+	public synchronized long append(int sampleSize, double value, long elapsedNanos) {
+		if (closed) {
+			throw new IllegalStateException("Results sink is closed.");
+		}
+		long sequenceNumber = nextSequenceNumber++;
+		current.putLong(sequenceNumber).putInt(sampleSize).putDouble(value).putLong(elapsedNanos);
+		if (!current.hasRemaining()) {
+			handOver();
+		}
+		return sequenceNumber;
+	}
+
+	/**
+	 * Passes current buffer to the writer thread and takes a free buffer: a new one if less than MAX_BUFFERS are
+	 * allocated, otherwise the first one written.
+	 */
+	private void handOver() {
+		current.flip();
+		fullBuffers.add(current);
+		ByteBuffer next = freeBuffers.poll();
+		if (next == null && numberOfBuffers < MAX_BUFFERS) {
+			++numberOfBuffers;
+			next = ByteBuffer.allocate(bufferSize);
+		}
+		boolean interrupted = false;
+		while (next == null) {
+			try {
+				next = freeBuffers.take();
+			} catch (InterruptedException e) {
+				// Records cannot be dropped: waits anyway
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		current = next;
+	}
+
+	/**
+	 * Body of the writer thread.
+	 */
+	private void writeBuffers() {
+		try {
+			ByteBuffer buffer;
+			while ((buffer = fullBuffers.take()) != END_OF_STREAM) {
+				try {
+					while (buffer.hasRemaining()) {
+						channel.write(buffer);
+					}
+				} catch (IOException e) {
+					if (writeError == null) {
+						writeError = e;
+					}
+				}
+				buffer.clear();
+				freeBuffers.add(buffer);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Writes all pending records, stops the writer thread and closes the file.
+	 *
+	 * @throws IOException if a record could not be written
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			if (current.position() > 0) {
+				handOver();
+			}
+			fullBuffers.add(END_OF_STREAM);
+		}
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+		if (writeError != null) {
+			throw writeError;
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package montecarlo;
+
+import statistics.StatCollector;
+
+import java.io.Serializable;
+
+/**
+ * Rule deciding how many runs of an experiment are performed by a simulation (see MonteCarloSimulation.simulate).
+ * <p>
+ * The simulation repeatedly asks the rule for a target number of runs and performs runs until the target is reached,
+ * until the rule returns a target which is not greater than the number of runs already performed.
+ * <p>
+ * Rules may keep track of the phase of the simulation. They are serializable so that they can be saved with a
+ * checkpoint of the simulation. A rule instance should only be used for one simulation.
+ */
+public interface StoppingRule extends Serializable {
+
+	/**
+	 * Returns the total number of runs to be reached before this rule is called again. The simulation stops when the
+	 * returned value is not greater than the number of observations of stat.
+	 *
+	 * @param stat collector of the results of the runs performed so far
+	 * @return number of runs to be reached
+	 */
+	long getTargetNumberOfRuns(StatCollector stat);
+
+	/**
+	 * Returns the theoretical minimal number of runs needed to satisfy the precision targeted by this rule, had the
+	 * variance of the results been known in advance (it is estimated from stat). Comparing it with the number of runs
+	 * actually performed measures the overshoot of the rule.
+	 *
+	 * @param stat collector of the results of the runs performed so far
+	 * @return minimal number of runs, or -1 if it cannot be estimated yet
+	 */
+	long getMinimumNumberOfRuns(StatCollector stat);
+}
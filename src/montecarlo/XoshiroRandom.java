@@ -0,0 +1,132 @@
+package montecarlo;
+
+import java.util.Random;
+
+/**
+ * Fast pseudo-random number generator implementing xoshiro256** (Blackman and Vigna), with a period of 2^256 - 1.
+ * <p>
+ * As a subclass of Random, it can be given to every method taking a Random, but unlike Random, it is not thread safe
+ * (no atomic update on each draw): each thread should use its own generator, for instance obtained by split() or
+ * jump(). Results obtained with Random remain reproducible by passing a Random seeded as before.
+ */
+public class XoshiroRandom extends Random {
+
+	private static final long serialVersionUID = 1L;
+
+	// Coefficients of the jump polynomial (2^128 steps)
+	private static final long[] JUMP = {
+			0x180ec6d33cfd0abaL, 0xd5a61266f0c9392cL, 0xa9582618e03fc9aaL, 0x39abdc4529b1661cL
+	};
+
+	// State of the generator (never all zero). Not initialized here, as setSeed is called by the constructor of
+	// Random before the initializers of this class.
+	private long s0;
+	private long s1;
+	private long s2;
+	private long s3;
+
+	/**
+	 * Creates a new generator with a seed chosen as by Random().
+	 */
+	public XoshiroRandom() {
+		super();
+	}
+
+	/**
+	 * Creates a new generator whose state is derived from seed (with the SplitMix64 generator).
+	 *
+	 * @param seed initial seed
+	 */
+	public XoshiroRandom(long seed) {
+		super(seed);
+	}
+
+	/**
+	 * Sets the state of this generator from seed, so that generators created with the same seed give the same
+	 * sequence.
+	 *
+	 * @param seed initial seed
+	 */
+	@Override
+	public void setSeed(long seed) {
+		// SplitMix64 spreads the seed over the state, which is never all zero
+		long x = seed;
+		s0 = mix(x += 0x9E3779B97F4A7C15L);
+		s1 = mix(x += 0x9E3779B97F4A7C15L);
+		s2 = mix(x += 0x9E3779B97F4A7C15L);
+		s3 = mix(x + 0x9E3779B97F4A7C15L);
+	}
+
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	@Override
+	public long nextLong() {
+		long result = Long.rotateLeft(s1 * 5, 7) * 9;
+		long t = s1 << 17;
+		s2 ^= s0;
+		s3 ^= s1;
+		s1 ^= s2;
+		s0 ^= s3;
+		s2 ^= t;
+		s3 = Long.rotateLeft(s3, 45);
+		return result;
+	}
+
+	@Override
+	protected int next(int bits) {
+		return (int) (nextLong() >>> (64 - bits));
+	}
+
+	@Override
+	public int nextInt() {
+		return (int) (nextLong() >>> 32);
+	}
+
+	@Override
+	public double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * Advances this generator by 2^128 draws. Calling jump() on copies of a generator gives up to 2^128
+	 * non-overlapping sequences of 2^128 draws.
+	 */
+	public void jump() {
+		long t0 = 0, t1 = 0, t2 = 0, t3 = 0;
+		for (long jump : JUMP) {
+			for (int b = 0; b < 64; ++b) {
+				if ((jump & (1L << b)) != 0) {
+					t0 ^= s0;
+					t1 ^= s1;
+					t2 ^= s2;
+					t3 ^= s3;
+				}
+				nextLong();
+			}
+		}
+		s0 = t0;
+		s1 = t1;
+		s2 = t2;
+		s3 = t3;
+	}
+
+	/**
+	 * Returns a copy of this generator, and advances this generator by 2^128 draws (see jump()): the returned
+	 * generator gives the next 2^128 draws this generator would have given, which this generator will not give.
+	 *
+	 * @return new independent generator
+	 */
+	public XoshiroRandom split() {
+		XoshiroRandom copy = new XoshiroRandom(0);
+		copy.s0 = s0;
+		copy.s1 = s1;
+		copy.s2 = s2;
+		copy.s3 = s3;
+		jump();
+		return copy;
+	}
+}
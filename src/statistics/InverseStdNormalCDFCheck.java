@@ -0,0 +1,60 @@
+package statistics;
+
+/**
+ * Accuracy and speed check of InverseStdNormalCDF, run by hand since the project has no test suite.
+ * <p>
+ * Compares the computed quantiles with reference values: quantiles of the former 500-entry table (given to 15
+ * significant digits) and tail quantiles down to 1e-20. Prints the largest deviation and the cost of a call, and
+ * exits with status 1 if a deviation exceeds TOLERANCE.
+ * <p>
+ * Usage: java statistics.InverseStdNormalCDFCheck
+ */
+final class InverseStdNormalCDFCheck {
+
+	// Largest accepted deviation, relative to max(1, quantile)
+	private static final double TOLERANCE = 1e-14;
+	// Probabilities and their quantiles
+	private static final double[][] REFERENCE = {{0.5, 0.0}, {0.55, 0.125661346855074}, {0.6, 0.253347103135800},
+			{0.65, 0.385320466407568}, {0.7, 0.524400512708041}, {0.75, 0.674489750196082},
+			{0.8, 0.841621233572914}, {0.85, 1.03643338949379}, {0.9, 1.28155156554460},
+			{0.95, 1.64485362695147}, {0.975, 1.95996398454005}, {0.99, 2.32634787404084},
+			{0.995, 2.57582930354890}, {0.999, 3.09023230616781}, {0.025, 1.95996398454005},
+			{1e-7, 5.199337582192817}, {1e-10, 6.361340902404056}, {1e-20, 9.262340089798408}};
+	// Number of calls of each timing loop
+	private static final int CALLS = 20_000_000;
+
+	/**
+	 * Private constructor. Makes it impossible to instantiate.
+	 */
+	private InverseStdNormalCDFCheck() {
+	}
+
+	public static void main(String[] args) {
+		double maxDeviation = 0;
+		for (double[] reference : REFERENCE) {
+			double quantile = InverseStdNormalCDF.getQuantile(reference[0]);
+			double deviation = Math.abs(quantile - reference[1]) / Math.max(1.0, reference[1]);
+			System.out.printf("p = %-8g quantile = %.16f reference = %.15f%n", reference[0], quantile, reference[1]);
+			maxDeviation = Math.max(maxDeviation, deviation);
+		}
+		System.out.printf("Largest deviation: %.2e%n", maxDeviation);
+
+		// Same probability at each call (cached), then a different one at each call
+		double sum = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < CALLS; ++i) {
+			sum += InverseStdNormalCDF.getQuantile(0.025);
+		}
+		System.out.printf("Same probability: %.1f ns/call%n", (System.nanoTime() - start) / (double) CALLS);
+		start = System.nanoTime();
+		for (int i = 0; i < CALLS; ++i) {
+			sum += InverseStdNormalCDF.getQuantile(0.5 + (i % 499) * 0.001);
+		}
+		System.out.printf("Changing probability: %.1f ns/call (checksum %g)%n",
+				(System.nanoTime() - start) / (double) CALLS, sum);
+
+		if (maxDeviation > TOLERANCE) {
+			System.exit(1);
+		}
+	}
+}
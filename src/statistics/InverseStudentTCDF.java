@@ -0,0 +1,165 @@
+package statistics;
+
+/**
+ * Utility class to compute Student's t distribution quantiles.
+ */
+public final class InverseStudentTCDF {
+
+	// Coefficients of the Lanczos approximation of the log gamma function (g = 7, n = 9)
+	private static final double[] LANCZOS = {0.99999999999980993, 676.5203681218851, -1259.1392167224028,
+			771.32342877765313, -176.61502916214059, 12.507343278686905, -0.13857109526572012,
+			9.9843695780195716e-6, 1.5056327351493116e-7};
+	// Relative accuracy of the computed quantiles
+	private static final double EPSILON = 1e-14;
+	// Maximal number of iterations of the continued fraction and of the root finding
+	private static final int MAX_ITERATIONS = 300;
+
+	/**
+	 * Private constructor. Makes it impossible to instantiate.
+	 */
+	private InverseStudentTCDF() {
+	}
+
+	/**
+	 * Returns quantile value of Student's t distribution with given degrees of freedom for given probability.
+	 * <p>
+	 * As for InverseStdNormalCDF.getQuantile, the distribution being symmetric, the non negative quantile is returned
+	 * whether prob or 1 - prob is given.
+	 *
+	 * @param prob             desired probability
+	 * @param degreesOfFreedom degrees of freedom of the distribution
+	 * @return value q &ge; 0 such that P(T &le; q) = max(prob, 1 - prob) where T is a random variable with Student's t
+	 * distribution (Double.POSITIVE_INFINITY if prob is 0 or 1)
+	 * @throws IllegalArgumentException if prob is not between 0 and 1 or degreesOfFreedom is not positive
+	 */
+	public static double getQuantile(double prob, long degreesOfFreedom) {
+		// Check arguments
+		if (prob < 0.0 || prob > 1.0) {
+			throw new IllegalArgumentException("Quantile should be between 0 and 1.");
+		}
+		if (degreesOfFreedom < 1) {
+			throw new IllegalArgumentException("Degrees of freedom should be positive.");
+		}
+
+		// Two sided tail probability P(|T| > q)
+		double alpha = 2.0 * Math.min(prob, 1.0 - prob);
+		if (alpha == 0.0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		if (alpha == 1.0) {
+			return 0.0;
+		}
+
+		double nu = degreesOfFreedom;
+		double p = 1.0 - alpha / 2.0;
+
+		// Closed forms for 1 and 2 degrees of freedom
+		if (degreesOfFreedom == 1) {
+			return Math.tan(Math.PI * (p - 0.5));
+		}
+		if (degreesOfFreedom == 2) {
+			return Math.sqrt(2.0 / (alpha * (2.0 - alpha)) - 2.0);
+		}
+
+		// Cornish-Fisher expansion around the normal quantile as starting point
+		double z = InverseStdNormalCDF.getQuantile(p);
+		double z2 = z * z;
+		double t = z + z * (z2 + 1) / (4 * nu)
+				+ z * ((5 * z2 + 16) * z2 + 3) / (96 * nu * nu)
+				+ z * (((3 * z2 + 19) * z2 + 17) * z2 - 15) / (384 * nu * nu * nu);
+		if (degreesOfFreedom > 1_000_000) {
+			return t;
+		}
+
+		// Newton's method on P(|T| > t) - alpha, safeguarded by bisection
+		double lower = 0.0, upper = Double.POSITIVE_INFINITY;
+		double logDensityConstant = logGamma((nu + 1) / 2) - logGamma(nu / 2) - 0.5 * Math.log(nu * Math.PI);
+		for (int iteration = 0; iteration < MAX_ITERATIONS; ++iteration) {
+			double f = twoSidedTail(t, nu) - alpha;
+			if (f > 0) {
+				lower = t;
+			} else {
+				upper = t;
+			}
+			double density = Math.exp(logDensityConstant - (nu + 1) / 2 * Math.log1p(t * t / nu));
+			double next = t + f / (2.0 * density);
+			if (!(next > lower && next < upper)) {
+				next = Double.isInfinite(upper) ? 2.0 * t + 1.0 : (lower + upper) / 2.0;
+			}
+			if (Math.abs(next - t) <= EPSILON * next) {
+				return next;
+			}
+			t = next;
+		}
+		return t;
+	}
+
+	/**
+	 * Returns P(|T| &gt; t) for Student's t distribution with nu degrees of freedom (t &ge; 0).
+	 */
+	private static double twoSidedTail(double t, double nu) {
+		return regularizedIncompleteBeta(nu / (nu + t * t), nu / 2, 0.5);
+	}
+
+	/**
+	 * Returns the regularized incomplete beta function I_x(a, b), computed with its continued fraction (modified
+	 * Lentz's method).
+	 */
+	private static double regularizedIncompleteBeta(double x, double a, double b) {
+		if (x <= 0.0) {
+			return 0.0;
+		}
+		if (x >= 1.0) {
+			return 1.0;
+		}
+		// The continued fraction converges quickly for x < (a + 1) / (a + b + 2)
+		if (x > (a + 1) / (a + b + 2)) {
+			return 1.0 - regularizedIncompleteBeta(1.0 - x, b, a);
+		}
+
+		double logFront = logGamma(a + b) - logGamma(a) - logGamma(b) + a * Math.log(x) + b * Math.log1p(-x);
+		double tiny = 1e-300;
+		double c = 1.0;
+		double d = 1.0 - (a + b) * x / (a + 1);
+		d = 1.0 / (Math.abs(d) < tiny ? tiny : d);
+		double fraction = d;
+		for (int m = 1; m <= MAX_ITERATIONS; ++m) {
+			// Even step
+			double numerator = m * (b - m) * x / ((a + 2 * m - 1) * (a + 2 * m));
+			d = 1.0 + numerator * d;
+			d = 1.0 / (Math.abs(d) < tiny ? tiny : d);
+			c = 1.0 + numerator / c;
+			c = Math.abs(c) < tiny ? tiny : c;
+			fraction *= d * c;
+			// Odd step
+			numerator = -(a + m) * (a + b + m) * x / ((a + 2 * m) * (a + 2 * m + 1));
+			d = 1.0 + numerator * d;
+			d = 1.0 / (Math.abs(d) < tiny ? tiny : d);
+			c = 1.0 + numerator / c;
+			c = Math.abs(c) < tiny ? tiny : c;
+			double delta = d * c;
+			fraction *= delta;
+			if (Math.abs(delta - 1.0) < 1e-16) {
+				break;
+			}
+		}
+		return Math.exp(logFront) * fraction / a;
+	}
+
+	/**
+	 * Returns the natural logarithm of the gamma function (x &gt; 0), computed with Lanczos approximation.
+	 */
+	private static double logGamma(double x) {
+		if (x < 0.5) {
+			// Reflection formula
+			return Math.log(Math.PI / Math.abs(Math.sin(Math.PI * x))) - logGamma(1.0 - x);
+		}
+		x -= 1.0;
+		double sum = LANCZOS[0];
+		double t = x + 7.5;
+		for (int i = 1; i < LANCZOS.length; ++i) {
+			sum += LANCZOS[i] / (x + i);
+		}
+		return 0.5 * Math.log(2 * Math.PI) + (x + 0.5) * Math.log(t) - t + Math.log(sum);
+	}
+}
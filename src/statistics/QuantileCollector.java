@@ -0,0 +1,200 @@
+package statistics;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * This class provides methods for estimating a quantile (for instance the median) of one dimensional data (of type
+ * double) and for computing a confidence interval for it, in constant memory.
+ * <p>
+ * Observations are grouped in consecutive batches of batchSize observations. The quantile of each batch is estimated
+ * with the P-square algorithm (Jain and Chlamtac, 1985), which only keeps five markers, and the batch estimates are
+ * collected by a StatCollector. The quantile estimate is the mean of the batch estimates and its confidence interval
+ * is computed with a Student quantile (batch means method). Batches should be large enough for batch estimates to be
+ * nearly unbiased and normally distributed.
+ * <p>
+ * Collectors can be merged, for instance when observations are collected by several threads.
+ */
+public class QuantileCollector implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final double prob;           // probability of the estimated quantile
+	private final long batchSize;        // number of observations per batch
+	private final StatCollector batches; // quantile estimates of completed batches
+
+	// P-square state of current batch
+	private long numberOfObsInBatch;
+	private final double[] heights = new double[5];           // marker heights
+	private final long[] positions = new long[5];             // marker positions (1 based)
+	private final double[] desiredPositions = new double[5];  // desired marker positions
+	private final double[] increments = new double[5];        // increments of desired positions
+
+	/**
+	 * Creates a new collector and initializes it
+	 *
+	 * @param prob      probability of the quantile to be estimated (0.5 for the median)
+	 * @param batchSize number of observations per batch (at least 5)
+	 * @throws IllegalArgumentException if prob is not strictly between 0 and 1 or batchSize is less than 5
+	 */
+	public QuantileCollector(double prob, long batchSize) {
+		if (prob <= 0.0 || prob >= 1.0) {
+			throw new IllegalArgumentException("Quantile probability should be strictly between 0 and 1.");
+		}
+		if (batchSize < 5) {
+			throw new IllegalArgumentException("Batch size should be at least 5.");
+		}
+		this.prob = prob;
+		this.batchSize = batchSize;
+		this.batches = new StatCollector();
+		increments[0] = 0.0;
+		increments[1] = prob / 2;
+		increments[2] = prob;
+		increments[3] = (1 + prob) / 2;
+		increments[4] = 1.0;
+		init();
+	}
+
+	/**
+	 * Initializes the collector
+	 */
+	public void init() {
+		batches.init();
+		numberOfObsInBatch = 0;
+	}
+
+	/**
+	 * Adds a new observation to this collector.
+	 *
+	 * @param x observation to be added to this collector
+	 */
+	public void add(double x) {
+		if (numberOfObsInBatch < 5) {
+			heights[(int) numberOfObsInBatch++] = x;
+			if (numberOfObsInBatch == 5) {
+				Arrays.sort(heights);
+				for (int i = 0; i < 5; ++i) {
+					positions[i] = i + 1;
+					desiredPositions[i] = 1 + 4 * increments[i];
+				}
+			}
+		} else {
+			// Finds the cell containing x, updating extreme markers if needed
+			int k;
+			if (x < heights[0]) {
+				heights[0] = x;
+				k = 0;
+			} else if (x >= heights[4]) {
+				heights[4] = Math.max(heights[4], x);
+				k = 3;
+			} else {
+				k = 0;
+				while (x >= heights[k + 1]) {
+					++k;
+				}
+			}
+			for (int i = k + 1; i < 5; ++i) {
+				++positions[i];
+			}
+			for (int i = 0; i < 5; ++i) {
+				desiredPositions[i] += increments[i];
+			}
+			++numberOfObsInBatch;
+
+			// Adjusts the heights of the middle markers
+			for (int i = 1; i < 4; ++i) {
+				double d = desiredPositions[i] - positions[i];
+				if ((d >= 1 && positions[i + 1] - positions[i] > 1) || (d <= -1 && positions[i - 1] - positions[i] < -1)) {
+					int sign = (d > 0) ? 1 : -1;
+					double h = parabolic(i, sign);
+					if (!(heights[i - 1] < h && h < heights[i + 1])) {
+						h = heights[i] + sign * (heights[i + sign] - heights[i]) / (positions[i + sign] - positions[i]);
+					}
+					heights[i] = h;
+					positions[i] += sign;
+				}
+			}
+		}
+
+		if (numberOfObsInBatch == batchSize) {
+			batches.add(getBatchQuantile());
+			numberOfObsInBatch = 0;
+		}
+	}
+
+	/**
+	 * Piecewise parabolic prediction of the height of marker i moved by sign.
+	 */
+	private double parabolic(int i, int sign) {
+		double nPrev = positions[i - 1], n = positions[i], nNext = positions[i + 1];
+		return heights[i] + sign / (nNext - nPrev)
+				* ((n - nPrev + sign) * (heights[i + 1] - heights[i]) / (nNext - n)
+				+ (nNext - n - sign) * (heights[i] - heights[i - 1]) / (n - nPrev));
+	}
+
+	/**
+	 * Returns the quantile estimate of current batch.
+	 */
+	private double getBatchQuantile() {
+		if (numberOfObsInBatch >= 5) {
+			return heights[2];
+		}
+		// Fewer than five observations: exact quantile of the sorted observations
+		double[] sorted = Arrays.copyOf(heights, (int) numberOfObsInBatch);
+		Arrays.sort(sorted);
+		return sorted[(int) Math.min(sorted.length - 1, Math.floor(prob * sorted.length))];
+	}
+
+	/**
+	 * Adds the completed batches of another collector (estimating the same quantile with the same batch size) to this
+	 * collector. Observations of the current (incomplete) batch of other are not merged. The other collector is not
+	 * modified.
+	 *
+	 * @param other collector whose completed batches are added to this collector
+	 * @throws IllegalArgumentException if other does not estimate the same quantile with the same batch size
+	 */
+	public void merge(QuantileCollector other) {
+		if (other.prob != prob || other.batchSize != batchSize) {
+			throw new IllegalArgumentException("Merged collectors should have the same quantile and batch size.");
+		}
+		batches.merge(other.batches);
+	}
+
+	/**
+	 * Returns the number of completed batches since last initialization.
+	 *
+	 * @return number of completed batches
+	 */
+	public long getNumberOfBatches() {
+		return batches.getNumberOfObs();
+	}
+
+	/**
+	 * Returns the estimate of the quantile: the mean of the quantile estimates of the completed batches, or the
+	 * estimate of the current batch if no batch is completed yet.
+	 * <p>
+	 * If no observations were added since last initialization, Double.NaN is returned.
+	 *
+	 * @return the quantile estimate
+	 */
+	public double getQuantile() {
+		if (batches.getNumberOfObs() > 0) {
+			return batches.getAverage();
+		}
+		return (numberOfObsInBatch == 0) ? Double.NaN : getBatchQuantile();
+	}
+
+	/**
+	 * Computes a confidence interval with given confidence level for the quantile, from the quantile estimates of the
+	 * completed batches, and returns half of the interval width.
+	 * <p>
+	 * If less than two batches are completed, Double.NaN is returned.
+	 *
+	 * @param level the desired level of confidence of the C.I.
+	 * @return the half-width of the C.I
+	 * @throws IllegalArgumentException if level is not between 0 and 1
+	 */
+	public double getConfidenceIntervalHalfWidth(double level) {
+		return batches.getStudentConfidenceIntervalHalfWidth(level);
+	}
+}
@@ -1,9 +1,13 @@
 package statistics;
 
+import java.io.Serializable;
+
 /**
  * This class provides useful methods for collecting one dimensional data (of type double) and for computing basic statistics.
  */
-public class StatCollector {
+public class StatCollector implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	private long numberOfObs;        // number of collected data
 	private double avgOfObs;         // mean of collected data
@@ -25,6 +29,25 @@ public class StatCollector {
 		sumOfSquaredDev = 0.0;
 	}
 
+	/**
+	 * Replaces the observations of this collector by observations summarized by their number, average and sum of
+	 * squared deviations to the average (for instance received from another process, see getSumOfSquaredDeviations).
+	 *
+	 * @param numberOfObs            number of observations
+	 * @param average                average of the observations (ignored if there are none)
+	 * @param sumOfSquaredDeviations sum of squared deviations of the observations to their average
+	 * @throws IllegalArgumentException if numberOfObs or sumOfSquaredDeviations is negative
+	 */
+	public void set(long numberOfObs, double average, double sumOfSquaredDeviations) {
+		if (numberOfObs < 0 || !(sumOfSquaredDeviations >= 0)) {
+			throw new IllegalArgumentException("Number of observations and sum of squared deviations should be "
+					+ "non negative.");
+		}
+		this.numberOfObs = numberOfObs;
+		this.avgOfObs = (numberOfObs == 0) ? 0.0 : average;
+		this.sumOfSquaredDev = (numberOfObs == 0) ? 0.0 : sumOfSquaredDeviations;
+	}
+
 	/**
 	 * Adds a new observation to this collector.
 	 *
@@ -37,6 +60,31 @@ public class StatCollector {
 		sumOfSquaredDev += delta * (x - avgOfObs);
 	}
 
+	/**
+	 * Adds all observations collected by another collector to this collector, as if they had been added one by one
+	 * (up to rounding errors). The other collector is not modified.
+	 *
+	 * @param other collector whose observations are added to this collector
+	 */
+	public void merge(StatCollector other) {
+		if (other.numberOfObs == 0) {
+			return;
+		}
+		if (numberOfObs == 0) {
+			numberOfObs = other.numberOfObs;
+			avgOfObs = other.avgOfObs;
+			sumOfSquaredDev = other.sumOfSquaredDev;
+			return;
+		}
+
+		// Chan et al. pairwise update
+		long n = numberOfObs + other.numberOfObs;
+		double delta = other.avgOfObs - avgOfObs;
+		avgOfObs += delta * other.numberOfObs / n;
+		sumOfSquaredDev += other.sumOfSquaredDev + delta * delta * ((double) numberOfObs * other.numberOfObs / n);
+		numberOfObs = n;
+	}
+
 	/**
 	 * Returns the number of observations added to this collector since its last initialization.
 	 *
@@ -61,6 +109,16 @@ public class StatCollector {
 		}
 	}
 
+	/**
+	 * Returns the sum of squared deviations of the collected observations to their average (0 if no observations
+	 * were added since last initialization).
+	 *
+	 * @return the sum of squared deviations to the average
+	 */
+	public double getSumOfSquaredDeviations() {
+		return sumOfSquaredDev;
+	}
+
 	/**
 	 * Returns the sample variance of the collected observations since its last initialization.
 	 * <p>
@@ -116,4 +174,30 @@ public class StatCollector {
 		}
 
 	}
+
+	/**
+	 * Computes a confidence interval with given confidence level for the mean of the collected observations, using a
+	 * quantile of Student's t distribution with n - 1 degrees of freedom (instead of the normal quantile used by
+	 * getConfidenceIntervalHalfWidth), and returns half of the interval width. Better suited to small numbers of
+	 * observations.
+	 * <p>
+	 * If this collection contains less than two observations, Double.NaN is returned.
+	 *
+	 * @param level the desired level of confidence of the C.I.
+	 * @return the half-width of the C.I
+	 * @throws IllegalArgumentException if level is not between 0 and 1
+	 */
+	public double getStudentConfidenceIntervalHalfWidth(double level) {
+		// Check argument
+		if (level < 0.0 || level > 1.0) {
+			throw new IllegalArgumentException("Confidence level should be between 0 and 1.");
+		}
+
+		if (numberOfObs < 2) {
+			return Double.NaN;
+		} else {
+			double studentQuantile = InverseStudentTCDF.getQuantile(0.5 - level / 2.0, numberOfObs - 1);
+			return studentQuantile * getStandardDeviation() / Math.sqrt(numberOfObs);
+		}
+	}
 }
@@ -0,0 +1,169 @@
+package statistics;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * This class provides useful methods for collecting multi dimensional data (vectors of doubles) and for computing
+ * basic statistics, including covariances between components.
+ * <p>
+ * The statistics of each component are available through a StatCollector (see getStatCollector), which may for
+ * instance be given to a stopping rule.
+ */
+public class VectorStatCollector implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final StatCollector[] components;  // collectors of each component
+	private final double[] sumOfCrossDev;      // sums of products of deviations to the means, row major d x d matrix
+	private final double[] deviations;         // deviations of current observation to previous means (buffer)
+
+	/**
+	 * Creates a new collector and initializes it
+	 *
+	 * @param dimension number of components of the observations
+	 * @throws IllegalArgumentException if dimension is not positive
+	 */
+	public VectorStatCollector(int dimension) {
+		if (dimension <= 0) {
+			throw new IllegalArgumentException("Dimension should be positive.");
+		}
+		components = new StatCollector[dimension];
+		for (int i = 0; i < dimension; ++i) {
+			components[i] = new StatCollector();
+		}
+		sumOfCrossDev = new double[dimension * dimension];
+		deviations = new double[dimension];
+	}
+
+	/**
+	 * Initializes the collector
+	 */
+	public void init() {
+		for (StatCollector component : components) {
+			component.init();
+		}
+		Arrays.fill(sumOfCrossDev, 0.0);
+	}
+
+	/**
+	 * Returns the number of components of the observations.
+	 *
+	 * @return dimension of the observations
+	 */
+	public int getDimension() {
+		return components.length;
+	}
+
+	/**
+	 * Adds a new observation to this collector.
+	 *
+	 * @param x observation to be added to this collector (only its first getDimension() entries are read)
+	 */
+	public void add(double[] x) {
+		int d = components.length;
+		boolean first = components[0].getNumberOfObs() == 0;
+		for (int i = 0; i < d; ++i) {
+			deviations[i] = first ? 0.0 : x[i] - components[i].getAverage();
+			components[i].add(x[i]);
+		}
+		for (int i = 0; i < d; ++i) {
+			double deviation = deviations[i];
+			for (int j = 0; j < d; ++j) {
+				sumOfCrossDev[i * d + j] += deviation * (x[j] - components[j].getAverage());
+			}
+		}
+	}
+
+	/**
+	 * Adds all observations collected by another collector to this collector, as if they had been added one by one
+	 * (up to rounding errors). The other collector is not modified.
+	 *
+	 * @param other collector whose observations are added to this collector
+	 * @throws IllegalArgumentException if other does not have the same dimension
+	 */
+	public void merge(VectorStatCollector other) {
+		int d = components.length;
+		if (other.components.length != d) {
+			throw new IllegalArgumentException("Merged collectors should have the same dimension.");
+		}
+		long n = getNumberOfObs(), m = other.getNumberOfObs();
+		if (m == 0) {
+			return;
+		}
+		if (n > 0) {
+			for (int i = 0; i < d; ++i) {
+				deviations[i] = other.components[i].getAverage() - components[i].getAverage();
+			}
+			double weight = (double) n * m / (n + m);
+			for (int i = 0; i < d; ++i) {
+				for (int j = 0; j < d; ++j) {
+					sumOfCrossDev[i * d + j] += deviations[i] * deviations[j] * weight;
+				}
+			}
+		}
+		for (int k = 0; k < d * d; ++k) {
+			sumOfCrossDev[k] += other.sumOfCrossDev[k];
+		}
+		for (int i = 0; i < d; ++i) {
+			components[i].merge(other.components[i]);
+		}
+	}
+
+	/**
+	 * Returns the number of observations added to this collector since its last initialization.
+	 *
+	 * @return the number of added observations since last initialization
+	 */
+	public long getNumberOfObs() {
+		return components[0].getNumberOfObs();
+	}
+
+	/**
+	 * Returns the collector of one component of the observations. The returned collector is updated by this collector
+	 * and should not be modified.
+	 *
+	 * @param i component index
+	 * @return collector of component i
+	 * @throws IndexOutOfBoundsException if i is out of bounds
+	 */
+	public StatCollector getStatCollector(int i) {
+		return components[i];
+	}
+
+	/**
+	 * Returns the sample covariance between two components of the collected observations.
+	 * <p>
+	 * If this collection contains less than two observations, Double.NaN is returned.
+	 *
+	 * @param i first component index
+	 * @param j second component index
+	 * @return the sample covariance of components i and j
+	 * @throws IndexOutOfBoundsException if i or j is out of bounds
+	 */
+	public double getCovariance(int i, int j) {
+		if (i < 0 || i >= components.length || j < 0 || j >= components.length) {
+			throw new IndexOutOfBoundsException("Component index out of bounds.");
+		}
+		long n = getNumberOfObs();
+		if (n < 2) {
+			return Double.NaN;
+		} else {
+			return sumOfCrossDev[i * components.length + j] / (n - 1);
+		}
+	}
+
+	/**
+	 * Returns the sample correlation between two components of the collected observations.
+	 * <p>
+	 * If this collection contains less than two observations, Double.NaN is returned.
+	 *
+	 * @param i first component index
+	 * @param j second component index
+	 * @return the sample correlation of components i and j
+	 * @throws IndexOutOfBoundsException if i or j is out of bounds
+	 */
+	public double getCorrelation(int i, int j) {
+		return getCovariance(i, j) / (components[i].getStandardDeviation() * components[j].getStandardDeviation());
+	}
+}
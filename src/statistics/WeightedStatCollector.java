@@ -0,0 +1,146 @@
+package statistics;
+
+import java.io.Serializable;
+
+/**
+ * This class provides useful methods for collecting weighted observations, such as the results of an importance
+ * sampling simulation weighted by their likelihood ratio, and for computing basic statistics.
+ * <p>
+ * The mean of the weighted values w x (unbiased importance sampling estimator of the mean of x under the original
+ * distribution) is estimated with its confidence interval; the self-normalized mean and the effective sample size
+ * (Kish) are also available.
+ */
+public class WeightedStatCollector implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final StatCollector weightedValues = new StatCollector();  // collector of the products w x
+	private double sumOfWeights;         // sum of the weights
+	private double sumOfSquaredWeights;  // sum of the squared weights
+	private double sumOfWeightedValues;  // sum of the products w x
+
+	/**
+	 * Creates a new collector and initializes it
+	 */
+	public WeightedStatCollector() {
+		init();
+	}
+
+	/**
+	 * Initializes the collector
+	 */
+	public void init() {
+		weightedValues.init();
+		sumOfWeights = 0.0;
+		sumOfSquaredWeights = 0.0;
+		sumOfWeightedValues = 0.0;
+	}
+
+	/**
+	 * Adds a new observation to this collector.
+	 *
+	 * @param x      observation to be added to this collector
+	 * @param weight weight of the observation (likelihood ratio)
+	 * @throws IllegalArgumentException if weight is negative
+	 */
+	public void add(double x, double weight) {
+		if (weight < 0.0) {
+			throw new IllegalArgumentException("Weight should be non negative.");
+		}
+		weightedValues.add(weight * x);
+		sumOfWeights += weight;
+		sumOfSquaredWeights += weight * weight;
+		sumOfWeightedValues += weight * x;
+	}
+
+	/**
+	 * Adds all observations collected by another collector to this collector. The other collector is not modified.
+	 *
+	 * @param other collector whose observations are added to this collector
+	 */
+	public void merge(WeightedStatCollector other) {
+		weightedValues.merge(other.weightedValues);
+		sumOfWeights += other.sumOfWeights;
+		sumOfSquaredWeights += other.sumOfSquaredWeights;
+		sumOfWeightedValues += other.sumOfWeightedValues;
+	}
+
+	/**
+	 * Returns the number of observations added to this collector since its last initialization.
+	 *
+	 * @return the number of added observations since last initialization
+	 */
+	public long getNumberOfObs() {
+		return weightedValues.getNumberOfObs();
+	}
+
+	/**
+	 * Returns the mean of the weighted values w x.
+	 * <p>
+	 * If this collection is empty, Double.NaN is returned.
+	 *
+	 * @return the importance sampling estimate of the mean
+	 */
+	public double getAverage() {
+		return weightedValues.getAverage();
+	}
+
+	/**
+	 * Returns the sample variance of the weighted values w x.
+	 * <p>
+	 * If this collection contains less than two observations, Double.NaN is returned.
+	 *
+	 * @return the sample variance of the weighted values
+	 */
+	public double getVariance() {
+		return weightedValues.getVariance();
+	}
+
+	/**
+	 * Computes a confidence interval with given confidence level for the mean of the weighted values and returns
+	 * half of the interval width.
+	 * <p>
+	 * If this collection contains less than two observations, Double.NaN is returned.
+	 *
+	 * @param level the desired level of confidence of the C.I.
+	 * @return the half-width of the C.I
+	 * @throws IllegalArgumentException if level is not between 0 and 1
+	 */
+	public double getConfidenceIntervalHalfWidth(double level) {
+		return weightedValues.getConfidenceIntervalHalfWidth(level);
+	}
+
+	/**
+	 * Returns the self-normalized mean sum(w x) / sum(w), which does not need weights to be exactly normalized, but
+	 * is slightly biased.
+	 * <p>
+	 * If all weights are 0, Double.NaN is returned.
+	 *
+	 * @return the self-normalized importance sampling estimate of the mean
+	 */
+	public double getSelfNormalizedAverage() {
+		return sumOfWeights > 0.0 ? sumOfWeightedValues / sumOfWeights : Double.NaN;
+	}
+
+	/**
+	 * Returns the effective sample size (sum w)^2 / sum(w^2): the number of unweighted observations that would give
+	 * about the same precision. Much smaller than getNumberOfObs() if a few weights dominate.
+	 *
+	 * @return the effective sample size (0 if all weights are 0)
+	 */
+	public double getEffectiveSampleSize() {
+		return sumOfSquaredWeights > 0.0 ? sumOfWeights * sumOfWeights / sumOfSquaredWeights : 0.0;
+	}
+
+	/**
+	 * Returns the mean of the weights, which should be close to 1 if the weights are likelihood ratios.
+	 * <p>
+	 * If this collection is empty, Double.NaN is returned.
+	 *
+	 * @return the mean of the weights
+	 */
+	public double getAverageWeight() {
+		long n = getNumberOfObs();
+		return n > 0 ? sumOfWeights / n : Double.NaN;
+	}
+}
@@ -0,0 +1,107 @@
+package tsp;
+
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Distance functions of TSPLIB (see the EDGE_WEIGHT_TYPE keyword of TSPLIB files).
+ * <p>
+ * Each metric creates, once per data set, a kernel computing distances from the coordinates of the cities, so that
+ * the metric is not tested on each distance computation.
+ */
+public enum DistanceMetric {
+
+	/**
+	 * Euclidean distance rounded to the nearest integer.
+	 */
+	EUC_2D {
+		@Override
+		IntBinaryOperator createKernel(double[] x, double[] y) {
+			return (i, j) -> {
+				double dx = x[i] - x[j];
+				double dy = y[i] - y[j];
+				return (int) Math.round(Math.sqrt(dx * dx + dy * dy));
+			};
+		}
+	},
+
+	/**
+	 * Euclidean distance rounded up to the next integer.
+	 */
+	CEIL_2D {
+		@Override
+		IntBinaryOperator createKernel(double[] x, double[] y) {
+			return (i, j) -> {
+				double dx = x[i] - x[j];
+				double dy = y[i] - y[j];
+				return (int) Math.ceil(Math.sqrt(dx * dx + dy * dy));
+			};
+		}
+	},
+
+	/**
+	 * Pseudo-Euclidean distance of the att48 and att532 instances.
+	 */
+	ATT {
+		@Override
+		IntBinaryOperator createKernel(double[] x, double[] y) {
+			// TSPLIB rounds r = sqrt((dx^2 + dy^2) / 10) to the nearest integer t, then adds 1 if t < r: this is
+			// exactly rounding r up
+			return (i, j) -> {
+				double dx = x[i] - x[j];
+				double dy = y[i] - y[j];
+				return (int) Math.ceil(Math.sqrt((dx * dx + dy * dy) / 10.0));
+			};
+		}
+	},
+
+	/**
+	 * Geographical distance (in km) between cities given by their latitude (x) and longitude (y), in DDD.MM format.
+	 */
+	GEO {
+		private static final double PI = 3.141592;
+		private static final double RRR = 6378.388;
+
+		@Override
+		IntBinaryOperator createKernel(double[] x, double[] y) {
+			// Converts coordinates to radians once and for all
+			double[] latitude = new double[x.length];
+			double[] longitude = new double[y.length];
+			for (int i = 0; i < x.length; i++) {
+				latitude[i] = toRadians(x[i]);
+				longitude[i] = toRadians(y[i]);
+			}
+			return (i, j) -> {
+				double q1 = Math.cos(longitude[i] - longitude[j]);
+				double q2 = Math.cos(latitude[i] - latitude[j]);
+				double q3 = Math.cos(latitude[i] + latitude[j]);
+				return (int) (RRR * Math.acos(0.5 * ((1.0 + q1) * q2 - (1.0 - q1) * q3)) + 1.0);
+			};
+		}
+
+		private double toRadians(double coordinate) {
+			int degrees = (int) coordinate;
+			double minutes = coordinate - degrees;
+			return PI * (degrees + 5.0 * minutes / 3.0) / 180.0;
+		}
+	},
+
+	/**
+	 * Distances given explicitly by a matrix.
+	 */
+	EXPLICIT {
+		@Override
+		IntBinaryOperator createKernel(double[] x, double[] y) {
+			throw new IllegalStateException("Explicit distances cannot be computed from coordinates.");
+		}
+	};
+
+	/**
+	 * Creates the function computing the distance between two cities given by their indices.
+	 *
+	 * @param x X coordinates of the cities
+	 * @param y Y coordinates of the cities
+	 * @return distance function
+	 * @throws IllegalStateException if this metric is EXPLICIT
+	 */
+	abstract IntBinaryOperator createKernel(double[] x, double[] y);
+}
@@ -0,0 +1,135 @@
+package tsp;
+
+/**
+ * Exact solver for small instances of the TSP (Held–Karp dynamic programming over the subsets of cities), used by
+ * TspExperiment for samples of at most MAX_NUMBER_OF_CITIES cities.
+ * <p>
+ * For n cities, the table holds the length of the shortest path starting at city 0, visiting a subset of the other
+ * cities and ending at one of them: 2^(n-1) * (n-1) ints, filled in O(2^n * n^2) time. The table and the distance
+ * buffer are kept from one call to the other and only grow, so that a solver reused for samples of similar sizes
+ * does not allocate. A solver is not thread safe.
+ */
+final class HeldKarpSolver {
+
+	/**
+	 * Largest number of cities accepted by solve (the table then takes 40 MB).
+	 */
+	static final int MAX_NUMBER_OF_CITIES = 20;
+
+	// Row major distances between the cities of the current instance
+	private int[] distances = new int[0];
+	// Length of the shortest path from city 0 visiting subset s and ending at city j + 1, at s * (n - 1) + j
+	private int[] table = new int[0];
+
+	/**
+	 * Computes an optimal tour of data.
+	 *
+	 * @param data     problem instance, with at most MAX_NUMBER_OF_CITIES cities
+	 * @param sequence array receiving the optimal tour in its first entries, starting with city 0
+	 * @return length of the optimal tour, or -1 if the distances are too large for the table (the sum of n distances
+	 * could exceed Integer.MAX_VALUE)
+	 * @throws IllegalArgumentException if data has more than MAX_NUMBER_OF_CITIES cities or sequence is too short
+	 */
+	long solve(TspData data, int[] sequence) {
+		int n = data.getNumberOfCities();
+		if (n > MAX_NUMBER_OF_CITIES) {
+			throw new IllegalArgumentException("Number of cities should be at most " + MAX_NUMBER_OF_CITIES + ".");
+		}
+		if (sequence.length < n) {
+			throw new IllegalArgumentException("Sequence should be able to contain every city.");
+		}
+		if (n <= 2) {
+			for (int i = 0; i < n; ++i) {
+				sequence[i] = i;
+			}
+			return n == 2 ? 2L * data.getDistance(0, 1) : 0;
+		}
+
+		// Copie des distances dans un tableau plat
+		if (distances.length < n * n) {
+			distances = new int[MAX_NUMBER_OF_CITIES * MAX_NUMBER_OF_CITIES];
+		}
+		int[] d = distances;
+		long maxDistance = 0;
+		for (int i = 0; i < n; ++i) {
+			for (int j = 0; j < n; ++j) {
+				d[i * n + j] = data.getDistance(i, j);
+				maxDistance = Math.max(maxDistance, d[i * n + j]);
+			}
+		}
+		if (maxDistance * n > Integer.MAX_VALUE) {
+			return -1;
+		}
+
+		int m = n - 1;
+		int full = (1 << m) - 1;
+		int size = (full + 1) * m;
+		if (table.length < size) {
+			table = new int[size];
+		}
+		int[] t = table;
+
+		// Chaque entrée est calculée à partir de sous-ensembles plus petits, donc d'indices plus petits
+		for (int s = 1; s <= full; ++s) {
+			int row = s * m;
+			for (int j = 0; j < m; ++j) {
+				int bit = 1 << j;
+				if ((s & bit) == 0) {
+					continue;
+				}
+				int previous = s ^ bit;
+				int city = j + 1;
+				if (previous == 0) {
+					t[row + j] = d[city];
+					continue;
+				}
+				int best = Integer.MAX_VALUE;
+				int previousRow = previous * m;
+				for (int rest = previous; rest != 0; rest &= rest - 1) {
+					int k = Integer.numberOfTrailingZeros(rest);
+					int length = t[previousRow + k] + d[(k + 1) * n + city];
+					if (length < best) {
+						best = length;
+					}
+				}
+				t[row + j] = best;
+			}
+		}
+
+		// Fermeture du tour vers la ville 0
+		int fullRow = full * m;
+		long best = Long.MAX_VALUE;
+		int last = -1;
+		for (int j = 0; j < m; ++j) {
+			long length = (long) t[fullRow + j] + d[(j + 1) * n];
+			if (length < best) {
+				best = length;
+				last = j;
+			}
+		}
+
+		// Reconstruction du tour en remontant la table
+		sequence[0] = 0;
+		int s = full;
+		for (int position = m; position >= 1; --position) {
+			sequence[position] = last + 1;
+			int previous = s ^ (1 << last);
+			if (previous == 0) {
+				break;
+			}
+			int target = t[s * m + last];
+			int previousRow = previous * m;
+			int next = -1;
+			for (int rest = previous; rest != 0; rest &= rest - 1) {
+				int k = Integer.numberOfTrailingZeros(rest);
+				if (t[previousRow + k] + d[(k + 1) * n + last + 1] == target) {
+					next = k;
+					break;
+				}
+			}
+			s = previous;
+			last = next;
+		}
+		return best;
+	}
+}
@@ -0,0 +1,78 @@
+package tsp;
+
+import java.util.Arrays;
+
+/**
+ * Ordering of points of the plane along a Hilbert curve, which keeps close points close in the order.
+ */
+final class HilbertCurve {
+
+	// The bounding box of the points is divided in a grid of 2^ORDER x 2^ORDER cells
+	private static final int ORDER = 16;
+
+	/**
+	 * Private constructor. Makes it impossible to instantiate.
+	 */
+	private HilbertCurve() {
+	}
+
+	/**
+	 * Sorts points along the Hilbert curve covering their bounding box. Points of the same grid cell keep their
+	 * relative order.
+	 *
+	 * @param x X coordinates of the points
+	 * @param y Y coordinates of the points
+	 * @return indices of the points, in curve order
+	 */
+	static int[] order(double[] x, double[] y) {
+		int n = x.length;
+		double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < n; i++) {
+			minX = Math.min(minX, x[i]);
+			maxX = Math.max(maxX, x[i]);
+			minY = Math.min(minY, y[i]);
+			maxY = Math.max(maxY, y[i]);
+		}
+		int side = 1 << ORDER;
+		double scale = (side - 1) / Math.max(Math.max(maxX - minX, maxY - minY), Double.MIN_NORMAL);
+
+		// Sorts (curve index, point index) pairs packed in longs
+		long[] keys = new long[n];
+		for (int i = 0; i < n; i++) {
+			int cellX = (int) ((x[i] - minX) * scale);
+			int cellY = (int) ((y[i] - minY) * scale);
+			keys[i] = (index(side, cellX, cellY) << 32) | i;
+		}
+		Arrays.sort(keys);
+
+		int[] order = new int[n];
+		for (int k = 0; k < n; k++) {
+			order[k] = (int) keys[k];
+		}
+		return order;
+	}
+
+	/**
+	 * Returns the position along the Hilbert curve of a cell of a side x side grid (side being a power of 2).
+	 */
+	private static long index(int side, int cellX, int cellY) {
+		long d = 0;
+		for (int s = side / 2; s > 0; s /= 2) {
+			int rx = (cellX & s) > 0 ? 1 : 0;
+			int ry = (cellY & s) > 0 ? 1 : 0;
+			d += (long) s * s * ((3 * rx) ^ ry);
+			// Rotates the quadrant so that the curve is continuous
+			if (ry == 0) {
+				if (rx == 1) {
+					cellX = s - 1 - cellX;
+					cellY = s - 1 - cellY;
+				}
+				int tmp = cellX;
+				cellX = cellY;
+				cellY = tmp;
+			}
+		}
+		return d;
+	}
+}
@@ -4,23 +4,92 @@ import java.io.InputStream;
 import java.util.InputMismatchException;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.function.IntBinaryOperator;
 
 /**
  * Class storing data of an instance of the TSP.
+ * <p>
+ * Data may be given either in our own format (number of cities, then lines "&lt;city number&gt; &lt;x&gt; &lt;y&gt;",
+ * rounded Euclidean distances) or in TSPLIB format (see TsplibReader), the format being detected from the first
+ * token.
  */
 public final class TspDataSet implements TspData {
 
-    private final City[] cities;
-    private final int[][] distanceMatrix;
+    /**
+     * Largest number of cities whose distance matrix is stored in a single row major array (the number of entries
+     * of an array is limited to about Integer.MAX_VALUE). The matrix of larger instances is stored row by row.
+     */
+    static final int MAX_CITIES_OF_FLAT_MATRIX = 46340;
+
+    private final double[] xCoordinates;
+    private final double[] yCoordinates;
+    private final DistanceMetric metric;
+    // Function computing distances, chosen once according to the metric
+    private final IntBinaryOperator distanceKernel;
+    // Row major distance matrix: distance between i and j at index i * n + j (null if not stored, or if stored by
+    // rows)
+    private final int[] distanceMatrix;
+    // Distance matrix stored by rows, above MAX_CITIES_OF_FLAT_MATRIX cities: distance between i and j at
+    // distanceRows[i][j] (null if not stored, or if stored in distanceMatrix)
+    private final int[][] distanceRows;
+    // Index of each city in the file and index of each city of the file, if cities are renumbered (null otherwise)
+    private final int[] originalCityId;
+    private final int[] cityIdForOriginal;
+    // Cache of distance rows, used when the matrix is not allocated (null if distances are always recomputed)
+    private final TspDistanceRowCache rowCache;
+    // Nearest neighbor lists, computed on first use (null until then)
+    private volatile TspNeighborLists neighborLists;
 
     /**
      * Creates a new TspData instance from an InputStream containing cities' data.
+     * <p>
+     * The full distance matrix is computed if it fits in memory. Otherwise, distance rows are computed on demand and
+     * as many of them as fit in a quarter of the maximal heap size are cached.
      *
      * @param inputStream InputStream to read from.
      * @throws TspParsingException If inputStream content does not conform to expected format.
      * @throws OutOfMemoryError    If the number of cities is too large.
      */
     public TspDataSet(final InputStream inputStream) throws TspParsingException {
+        this(inputStream, -1);
+    }
+
+    /**
+     * Creates a new TspData instance from an InputStream containing cities' data, without computing the full
+     * distance matrix: at most maxCachedRows rows of the matrix are computed on demand and cached (with clock
+     * eviction). If maxCachedRows is 0, distances are recomputed on each call. If maxCachedRows is negative, behaves
+     * as TspDataSet(InputStream).
+     * <p>
+     * The cache pays off when it can hold the rows of a whole sample (about samplingProb times the number of cities);
+     * a smaller cache keeps evicting rows which are needed again by the same replication.
+     * <p>
+     * The distance matrix of an EXPLICIT TSPLIB instance is always stored, whatever maxCachedRows.
+     *
+     * @param inputStream   InputStream to read from.
+     * @param maxCachedRows Maximal number of cached distance rows.
+     * @throws TspParsingException If inputStream content does not conform to expected format.
+     * @throws OutOfMemoryError    If the number of cities is too large.
+     */
+    public TspDataSet(final InputStream inputStream, int maxCachedRows) throws TspParsingException {
+        this(inputStream, maxCachedRows, false);
+    }
+
+    /**
+     * Same as TspDataSet(InputStream, int), renumbering the cities along a Hilbert curve if hilbertOrder is true.
+     * <p>
+     * With this order, cities which are close in the plane have close indices, so that the distances read by the
+     * heuristics are close in memory. All indices used with this data set (including the depot given to
+     * TspSampledDataWithDepot) are then indices in Hilbert order: see getCityIdForOriginal and getOriginalCityId to
+     * convert them from and to the indices of the file. TspExperiment does the conversion for its depot.
+     *
+     * @param inputStream   InputStream to read from.
+     * @param maxCachedRows Maximal number of cached distance rows (negative to store the full matrix if it fits).
+     * @param hilbertOrder  Whether cities are renumbered along a Hilbert curve.
+     * @throws TspParsingException If inputStream content does not conform to expected format.
+     * @throws OutOfMemoryError    If the number of cities is too large.
+     */
+    public TspDataSet(final InputStream inputStream, int maxCachedRows, boolean hilbertOrder)
+            throws TspParsingException {
 
         // Checks that inputStream is open and not empty
         Scanner scanner = new Scanner(inputStream);
@@ -32,61 +101,135 @@ public final class TspDataSet implements TspData {
             throw new TspParsingException("Invalid data. Unable to read data.");
         }
 
-        // Reads the number of cities
         int numberOfCities;
-        try {
+        int[] explicitDistances = null;
+        int[][] explicitRows = null;
+        if (scanner.hasNextInt()) {
+            // Reads the number of cities
             numberOfCities = scanner.nextInt();
-        } catch (InputMismatchException e) {
-            throw new TspParsingException("Invalid data value. Invalid number of cities in first line of data file.");
-        } catch (NoSuchElementException e) {
-            throw new TspParsingException("Invalid data format. Empty data file.");
-        }
-        if (numberOfCities < 3) {
-            throw new TspParsingException("Invalid data value. Number of cities should be at least 3.");
-        }
-
-        // Allocates the array storing the XY coordinates of the cities
-        try {
-            cities = new City[numberOfCities];
-        } catch (OutOfMemoryError e) {
-            throw new OutOfMemoryError("Out of memory error. Number of cities is too large.");
-        }
+            if (numberOfCities < 3) {
+                throw new TspParsingException("Invalid data value. Number of cities should be at least 3.");
+            }
 
-        // Reads the coordinates of each city
-        for (int cityReadCount = 0; cityReadCount < numberOfCities; cityReadCount++) {
+            // Allocates the arrays storing the XY coordinates of the cities
             try {
-                int cityNumber = scanner.nextInt();
-                if (cityNumber != cityReadCount) {
+                xCoordinates = new double[numberOfCities];
+                yCoordinates = new double[numberOfCities];
+            } catch (OutOfMemoryError e) {
+                throw new OutOfMemoryError("Out of memory error. Number of cities is too large.");
+            }
+
+            // Reads the coordinates of each city
+            for (int cityReadCount = 0; cityReadCount < numberOfCities; cityReadCount++) {
+                try {
+                    int cityNumber = scanner.nextInt();
+                    if (cityNumber != cityReadCount) {
+                        throw new TspParsingException(
+                                String.format("Invalid city number: %s expected, %s read.", cityNumber, cityReadCount));
+                    }
+                    xCoordinates[cityNumber] = scanner.nextInt();
+                    yCoordinates[cityNumber] = scanner.nextInt();
+                } catch (InputMismatchException e) {
+                    throw new TspParsingException("Invalid data value. City numbers and coordinates should be non negative integers.");
+                } catch (NoSuchElementException e) {
                     throw new TspParsingException(
-                            String.format("Invalid city number: %s expected, %s read.", cityNumber, cityReadCount));
+                            "Incomplete line : should follow format \"<city number> <x> <y>\""
+                    );
+                } catch (IllegalStateException e) {
+                    throw new TspParsingException("Invalid data. Unable to read data.");
+                }
+            }
+            metric = DistanceMetric.EUC_2D;
+        } else {
+            // TSPLIB file
+            TsplibReader reader = new TsplibReader(scanner);
+            numberOfCities = reader.getNumberOfCities();
+            xCoordinates = reader.getX();
+            yCoordinates = reader.getY();
+            metric = reader.getMetric();
+            explicitDistances = reader.getDistances();
+            explicitRows = reader.getDistanceRows();
+        }
+
+        // Renumbers cities along a Hilbert curve (explicit instances are ordered according to their display data)
+        if (hilbertOrder) {
+            originalCityId = HilbertCurve.order(xCoordinates, yCoordinates);
+            cityIdForOriginal = new int[numberOfCities];
+            double[] fileX = xCoordinates.clone();
+            double[] fileY = yCoordinates.clone();
+            for (int i = 0; i < numberOfCities; i++) {
+                cityIdForOriginal[originalCityId[i]] = i;
+                xCoordinates[i] = fileX[originalCityId[i]];
+                yCoordinates[i] = fileY[originalCityId[i]];
+            }
+            if (explicitDistances != null) {
+                int[] fileDistances = explicitDistances;
+                explicitDistances = new int[fileDistances.length];
+                for (int i = 0; i < numberOfCities; i++) {
+                    int row = originalCityId[i] * numberOfCities;
+                    for (int j = 0; j < numberOfCities; j++) {
+                        explicitDistances[i * numberOfCities + j] = fileDistances[row + originalCityId[j]];
+                    }
+                }
+            }
+            if (explicitRows != null) {
+                int[][] fileRows = explicitRows;
+                explicitRows = new int[numberOfCities][];
+                for (int i = 0; i < numberOfCities; i++) {
+                    int[] fileRow = fileRows[originalCityId[i]];
+                    int[] row = explicitRows[i] = new int[numberOfCities];
+                    for (int j = 0; j < numberOfCities; j++) {
+                        row[j] = fileRow[originalCityId[j]];
+                    }
                 }
-                int x = scanner.nextInt();
-                int y = scanner.nextInt();
-                cities[cityNumber] = new City(x, y);
-            } catch (InputMismatchException e) {
-                throw new TspParsingException("Invalid data value. City numbers and coordinates should be non negative integers.");
-            } catch (NoSuchElementException e) {
-                throw new TspParsingException(
-                        "Incomplete line : should follow format \"<city number> <x> <y>\""
-                );
-            } catch (IllegalStateException e) {
-                throw new TspParsingException("Invalid data. Unable to read data.");
             }
+        } else {
+            originalCityId = null;
+            cityIdForOriginal = null;
         }
 
-        // Try to allocate the distance matrix between cities.
-        // If not enough space is available, set distanceMatrix to null (distances will have to be recomputed
-        // each time in getDistance(i,j)).
-        int[][] tmpDistanceMatrix;
-        try {
-            tmpDistanceMatrix = new int[numberOfCities][numberOfCities];
-        } catch (OutOfMemoryError e) {
-            tmpDistanceMatrix = null;
+        // Try to allocate the distance matrix between cities (unless a row cache is asked for).
+        // If not enough space is available, set distanceMatrix to null (distances will have to be computed
+        // in getDistance(i,j), with a cache of rows holding as many rows as reasonable).
+        int[] tmpDistanceMatrix = explicitDistances;
+        int[][] tmpDistanceRows = explicitRows;
+        if (metric == DistanceMetric.EXPLICIT) {
+            maxCachedRows = 0;
+        } else if (maxCachedRows < 0) {
+            try {
+                if (numberOfCities <= MAX_CITIES_OF_FLAT_MATRIX) {
+                    tmpDistanceMatrix = new int[numberOfCities * numberOfCities];
+                } else {
+                    tmpDistanceRows = new int[numberOfCities][numberOfCities];
+                }
+            } catch (OutOfMemoryError e) {
+                maxCachedRows = defaultNumberOfCachedRows(numberOfCities);
+            }
         }
         distanceMatrix = tmpDistanceMatrix;
-        if (distanceMatrix != null) {
+        distanceRows = tmpDistanceRows;
+        int n = numberOfCities;
+        if (metric != DistanceMetric.EXPLICIT) {
+            distanceKernel = metric.createKernel(xCoordinates, yCoordinates);
+        } else if (distanceMatrix != null) {
+            distanceKernel = (i, j) -> distanceMatrix[i * n + j];
+        } else {
+            distanceKernel = (i, j) -> distanceRows[i][j];
+        }
+        if ((distanceMatrix != null || distanceRows != null) && metric != DistanceMetric.EXPLICIT) {
             computeDistanceMatrix();
         }
+        rowCache = maxCachedRows > 0
+                ? new TspDistanceRowCache(numberOfCities, maxCachedRows, this::computeDistance)
+                : null;
+    }
+
+    /**
+     * Returns the number of distance rows fitting in a quarter of the maximal heap size.
+     */
+    private static int defaultNumberOfCachedRows(int numberOfCities) {
+        long rowSize = 4L * numberOfCities + 64;
+        return (int) Math.min(numberOfCities, Runtime.getRuntime().maxMemory() / 4 / rowSize);
     }
 
     /**
@@ -100,31 +243,148 @@ public final class TspDataSet implements TspData {
     @Override
     public int getDistance(int i, int j) {
         // Check for out of bounds indices
-        if (i < 0 || i >= cities.length || j < 0 || j >= cities.length) {
+        if (i < 0 || i >= xCoordinates.length || j < 0 || j >= xCoordinates.length) {
             throw new IndexOutOfBoundsException("City index out of bounds.");
         }
 
-        // If distanceMatrix was not allocated, computes distance from i to j.
-        if (distanceMatrix == null) {
-            return (int) Math.round(Math.hypot(cities[i].x - cities[j].x, cities[i].y - cities[j].y));
+        // If the matrix was not allocated, looks up the row cache or computes distance from i to j.
+        if (distanceMatrix != null) {
+            return distanceMatrix[i * xCoordinates.length + j];
+        } else if (distanceRows != null) {
+            return distanceRows[i][j];
+        } else if (rowCache != null) {
+            return rowCache.getDistance(i, j);
         } else {
-            return distanceMatrix[i][j];
+            return computeDistance(i, j);
         }
     }
 
     /**
-     * Computes distances between all cities and populates distanceMatrix attribute.
+     * Computes the distance between two cities.
+     */
+    private int computeDistance(int i, int j) {
+        // The GEO formula does not give 0 between a city and itself
+        return i == j ? 0 : distanceKernel.applyAsInt(i, j);
+    }
+
+    /**
+     * Computes distances between all cities and populates distanceMatrix or distanceRows attribute.
      */
     private void computeDistanceMatrix() {
-        for (int i = 0; i < cities.length; i++) {
-            distanceMatrix[i][i] = 0;
+        IntBinaryOperator kernel = distanceKernel;
+        int n = xCoordinates.length;
+        if (distanceRows != null) {
+            for (int i = 0; i < n; i++) {
+                distanceRows[i][i] = 0;
+                for (int j = 0; j < i; j++) {
+                    distanceRows[i][j] = distanceRows[j][i] = kernel.applyAsInt(i, j);
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            distanceMatrix[i * n + i] = 0;
             for (int j = 0; j < i; j++) {
-                distanceMatrix[i][j] = distanceMatrix[j][i] =
-                        (int) Math.round(Math.hypot(cities[i].x - cities[j].x, cities[i].y - cities[j].y));
+                distanceMatrix[i * n + j] = distanceMatrix[j * n + i] = kernel.applyAsInt(i, j);
             }
         }
     }
 
+    /**
+     * Returns the row major distance matrix (distance between i and j at index i * getNumberOfCities() + j), or null
+     * if the matrix is not stored in a single array (not stored at all, or stored by rows above
+     * MAX_CITIES_OF_FLAT_MATRIX cities). The returned array must not be modified.
+     *
+     * @return Distance matrix or null.
+     */
+    int[] getDistanceMatrix() {
+        return distanceMatrix;
+    }
+
+    /**
+     * Returns lists of at least numberOfNeighbors nearest neighbors of each city (fewer if there are not enough
+     * cities). The lists are computed on first use and recomputed only when more neighbors are asked for.
+     *
+     * @param numberOfNeighbors Number of neighbors of each city.
+     * @return Nearest neighbor lists.
+     */
+    TspNeighborLists getNeighborLists(int numberOfNeighbors) {
+        TspNeighborLists lists = neighborLists;
+        if (lists == null || lists.getNumberOfNeighbors() < Math.min(numberOfNeighbors, xCoordinates.length - 1)) {
+            synchronized (this) {
+                lists = neighborLists;
+                if (lists == null
+                        || lists.getNumberOfNeighbors() < Math.min(numberOfNeighbors, xCoordinates.length - 1)) {
+                    lists = new TspNeighborLists(this, numberOfNeighbors);
+                    neighborLists = lists;
+                }
+            }
+        }
+        return lists;
+    }
+
+    /**
+     * Returns the index in the data file (0 for the first city) of a city of this data set. Both indices are the same
+     * unless cities are renumbered along a Hilbert curve.
+     *
+     * @param i City index
+     * @return Index of the city in the data file
+     * @throws IndexOutOfBoundsException If i is out of bounds.
+     */
+    public int getOriginalCityId(int i) {
+        // Check for out of bounds index
+        if (i < 0 || i >= xCoordinates.length) {
+            throw new IndexOutOfBoundsException("City index out of bounds.");
+        }
+
+        return originalCityId == null ? i : originalCityId[i];
+    }
+
+    /**
+     * Returns the index in this data set of a city given by its index in the data file (0 for the first city).
+     *
+     * @param originalId Index of the city in the data file
+     * @return City index
+     * @throws IndexOutOfBoundsException If originalId is out of bounds.
+     */
+    public int getCityIdForOriginal(int originalId) {
+        // Check for out of bounds index
+        if (originalId < 0 || originalId >= xCoordinates.length) {
+            throw new IndexOutOfBoundsException("City index out of bounds.");
+        }
+
+        return cityIdForOriginal == null ? originalId : cityIdForOriginal[originalId];
+    }
+
+    /**
+     * Returns the distance function of this problem instance.
+     *
+     * @return Distance metric.
+     */
+    public DistanceMetric getDistanceMetric() {
+        return metric;
+    }
+
+    /**
+     * Returns the maximal number of distance rows cached by this data set (0 if the full distance matrix is stored
+     * or if distances are always recomputed).
+     *
+     * @return Capacity of the distance row cache.
+     */
+    public int getMaxCachedRows() {
+        return rowCache == null ? 0 : rowCache.getCapacity();
+    }
+
+    /**
+     * Returns the number of distance lookups that needed a distance row to be computed (0 if there is no distance
+     * row cache).
+     *
+     * @return Number of misses of the distance row cache.
+     */
+    public long getDistanceCacheMisses() {
+        return rowCache == null ? 0 : rowCache.getMisses();
+    }
+
     /**
      * Returns the number of cities of this problem instance.
      *
@@ -132,11 +392,11 @@ public final class TspDataSet implements TspData {
      */
     @Override
     public final int getNumberOfCities() {
-        return cities.length;
+        return xCoordinates.length;
     }
 
     /**
-     * Returns X coordinate of a city
+     * Returns X coordinate of a city (rounded to the nearest integer for TSPLIB coordinates)
      *
      * @param i City index
      * @return X coordinate of the city
@@ -145,15 +405,15 @@ public final class TspDataSet implements TspData {
     @Override
     public final int getXCoordinateForCity(int i) {
         // Check for out of bounds index
-        if (i < 0 || i >= cities.length) {
+        if (i < 0 || i >= xCoordinates.length) {
             throw new IndexOutOfBoundsException("City index out of bounds.");
         }
 
-        return cities[i].x;
+        return (int) Math.round(xCoordinates[i]);
     }
 
     /**
-     * Returns Y coordinate of a city
+     * Returns Y coordinate of a city (rounded to the nearest integer for TSPLIB coordinates)
      *
      * @param i City index
      * @return Y coordinate of the city
@@ -162,23 +422,10 @@ public final class TspDataSet implements TspData {
     @Override
     public final int getYCoordinateForCity(int i) {
         // Check for out of bounds index
-        if (i < 0 || i >= cities.length) {
+        if (i < 0 || i >= xCoordinates.length) {
             throw new IndexOutOfBoundsException("City index out of bounds.");
         }
 
-        return cities[i].y;
-    }
-
-    /**
-     * Static nested class storing cities' XY coordinates
-     */
-    private static class City {
-        private final int x;
-        private final int y;
-
-        private City(int x, int y) {
-            this.x = x;
-            this.y = y;
-        }
+        return (int) Math.round(yCoordinates[i]);
     }
 }
@@ -0,0 +1,138 @@
+package tsp;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Bounded cache of rows of a distance matrix, used by TspDataSet when the full matrix does not fit in memory.
+ * <p>
+ * Rows are computed on demand and evicted with the clock (second chance) algorithm. Lookups are lock free; only
+ * insertions are synchronized. Cached rows are immutable, so a row evicted while a thread reads it remains valid.
+ * Hits only read shared state (the reference bit of a row is written when it is clear), and only misses are counted,
+ * so that threads looking up the same rows do not contend.
+ */
+final class TspDistanceRowCache {
+
+	// Function computing the distance between two cities
+	private final IntBinaryOperator distance;
+	private final int numberOfCities;
+	// Cached row of each city (null if not cached)
+	private final AtomicReferenceArray<Row> rowOfCity;
+	// Cached rows, in clock order
+	private final Row[] slots;
+	private int hand;
+	// Number of rows computed
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * Creates a new empty cache.
+	 *
+	 * @param numberOfCities number of cities of the data set
+	 * @param capacity       maximal number of cached rows
+	 * @param distance       function computing the distance between two cities
+	 * @throws IllegalArgumentException if capacity is not positive
+	 */
+	TspDistanceRowCache(int numberOfCities, int capacity, IntBinaryOperator distance) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Cache capacity should be positive.");
+		}
+		this.distance = distance;
+		this.numberOfCities = numberOfCities;
+		this.rowOfCity = new AtomicReferenceArray<>(numberOfCities);
+		this.slots = new Row[Math.min(capacity, numberOfCities)];
+	}
+
+	/**
+	 * Returns the distance between two cities, looking for the row of i, then for the row of j, and computing and
+	 * caching the row of i if neither is cached.
+	 *
+	 * @param i First city index.
+	 * @param j Second city index.
+	 * @return Distance between the two cities.
+	 */
+	int getDistance(int i, int j) {
+		Row row = rowOfCity.get(i);
+		if (row != null) {
+			if (!row.referenced) {
+				row.referenced = true;
+			}
+			return row.distances[j];
+		}
+		row = rowOfCity.get(j);
+		if (row != null) {
+			if (!row.referenced) {
+				row.referenced = true;
+			}
+			return row.distances[i];
+		}
+		misses.increment();
+		return load(i).distances[j];
+	}
+
+	/**
+	 * Computes the row of a city and inserts it in the cache, evicting a row if needed.
+	 */
+	private Row load(int city) {
+		// Computed outside of the lock, other threads may go on reading cached rows meanwhile
+		int[] distances = new int[numberOfCities];
+		for (int j = 0; j < numberOfCities; j++) {
+			distances[j] = distance.applyAsInt(city, j);
+		}
+		Row row = new Row(city, distances);
+
+		synchronized (this) {
+			// Another thread may have loaded the same row meanwhile
+			Row cached = rowOfCity.get(city);
+			if (cached != null) {
+				return cached;
+			}
+
+			// Clock: skips (and clears) recently referenced rows
+			Row victim;
+			while ((victim = slots[hand]) != null && victim.referenced) {
+				victim.referenced = false;
+				hand = (hand + 1) % slots.length;
+			}
+			if (victim != null) {
+				rowOfCity.set(victim.city, null);
+			}
+			slots[hand] = row;
+			hand = (hand + 1) % slots.length;
+			rowOfCity.set(city, row);
+		}
+		return row;
+	}
+
+	/**
+	 * Returns the number of distance lookups that needed a row to be computed.
+	 *
+	 * @return number of misses
+	 */
+	long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the maximal number of cached rows.
+	 *
+	 * @return capacity of the cache
+	 */
+	int getCapacity() {
+		return slots.length;
+	}
+
+	/**
+	 * Immutable row of the distance matrix, with its clock reference bit.
+	 */
+	private static final class Row {
+		private final int city;
+		private final int[] distances;
+		private volatile boolean referenced;
+
+		private Row(int city, int[] distances) {
+			this.city = city;
+			this.distances = distances;
+		}
+	}
+}
@@ -1,14 +1,88 @@
 package tsp;
 
 import montecarlo.Experiment;
+import montecarlo.MultiExperiment;
+import montecarlo.ResultsSink;
 
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Implementation of Experiment used for our Monte Carlo simulation.
+ * <p>
+ * As a MultiExperiment, each run also reports the sample size, the number of 2-opt moves and the likelihood ratio of
+ * the sample (metrics TOUR_LENGTH, SAMPLE_SIZE, TWO_OPT_MOVES and LIKELIHOOD_RATIO).
  */
 
-public class TspExperiment implements Experiment {
+public class TspExperiment implements Experiment, MultiExperiment {
+
+	/**
+	 * Index of the tour length in the results of execute(Random, double[]).
+	 */
+	public static final int TOUR_LENGTH = 0;
+	/**
+	 * Index of the number of cities of the sample in the results of execute(Random, double[]).
+	 */
+	public static final int SAMPLE_SIZE = 1;
+	/**
+	 * Index of the number of 2-opt moves in the results of execute(Random, double[]) (0 if the tour length came from
+	 * the solve cache).
+	 */
+	public static final int TWO_OPT_MOVES = 2;
+	/**
+	 * Index of the likelihood ratio of the sample (probability of the sample with BERNOULLI sampling over its
+	 * probability with the actual sampling) in the results of execute(Random, double[]): 1 unless sampling is TILTED.
+	 */
+	public static final int LIKELIHOOD_RATIO = 3;
+
+	/**
+	 * Default largest number of cities of the samples solved exactly (see setExactThreshold).
+	 */
+	public static final int DEFAULT_EXACT_THRESHOLD = 12;
+
+	/**
+	 * Ways of building the starting tour of each sample before 2-Opt-Best is applied.
+	 */
+	public enum Construction {
+		/**
+		 * Nearest Neighbor From Both Ends heuristic, started at the depot.
+		 */
+		NEAREST_NEIGHBOR,
+		/**
+		 * Sub-tour induced on the sample by a tour of the full data set computed once (cities not in the sample are
+		 * simply skipped).
+		 */
+		WARM_START
+	}
+
+	/**
+	 * Ways of selecting the cities of each sample.
+	 */
+	public enum Sampling {
+		/**
+		 * Each city (except depot) is selected with probability samplingProb, drawing one random number per city.
+		 */
+		BERNOULLI,
+		/**
+		 * Same distribution as BERNOULLI, drawing one random number per selected city (geometric gaps).
+		 */
+		GEOMETRIC_SKIP,
+		/**
+		 * Exactly round(samplingProb * (n - 1)) cities (except depot) are selected, n being the number of cities of
+		 * the full data set.
+		 */
+		FIXED_SIZE,
+		/**
+		 * Each city i (except depot) is selected with its own probability, set by setTiltedSelectionProbabilities
+		 * (samplingProb for every city by default), for importance sampling: results should be weighted by the
+		 * LIKELIHOOD_RATIO metric (see TspTailProbability).
+		 */
+		TILTED
+	}
 
 	// Reference to full data set
 	private final TspDataSet data;
@@ -16,36 +90,754 @@ public class TspExperiment implements Experiment {
 	private final int depot;
 	// Sampling probability
 	private final double samplingProb;
+	// Per thread buffers reused from one replication to the other
+	private final ThreadLocal<TspWorkspace> workspaces;
+	// Selection of the cities of each sample
+	private Sampling sampling = Sampling.BERNOULLI;
+	// Construction of the starting tour of each sample
+	private Construction construction = Construction.NEAREST_NEIGHBOR;
+	// Number of starting tours built by NEAREST_NEIGHBOR construction, and 2-opt exchanges applied to each of them
+	// before the best one is selected
+	private int numberOfStarts = 1;
+	private long maxTwoOptMovesPerStart;
+	// Whether the starts of a sample may be forked on the common pool
+	private boolean parallelStarts = true;
+	// Largest number of cities of the samples solved exactly rather than by the heuristics
+	private int exactThreshold = DEFAULT_EXACT_THRESHOLD;
+	// Optional cache of tour lengths of already solved samples
+	private TspSolveCache solveCache;
+	// Optional sink receiving the record of each replication
+	private ResultsSink resultsSink;
+	// Tour of the full data set used by WARM_START construction (computed on first use if not set)
+	private volatile int[] referenceTour;
+	// Selection probabilities of TILTED sampling, with the terms of the log likelihood ratio (null until set)
+	private volatile Tilt tilt;
+	// Maximal duration of the 2-opt improvement of each replication, in nanoseconds
+	private long twoOptTimeBudget = Long.MAX_VALUE;
+	// Time spent by the replications in sampling, construction and improvement, in nanoseconds
+	private final LongAdder samplingTime = new LongAdder();
+	private final LongAdder constructionTime = new LongAdder();
+	private final LongAdder improvementTime = new LongAdder();
 
+	/**
+	 * Creates an experiment drawing samples of data which contain the depot.
+	 *
+	 * @param data         full data set
+	 * @param depot        index of the depot city in the data file (see TspDataSet.getCityIdForOriginal)
+	 * @param samplingProb probability of selection for each city in data (except depot)
+	 * @throws IndexOutOfBoundsException if depot is out of bounds
+	 */
 	public TspExperiment(TspDataSet data, int depot, double samplingProb) {
 		this.data = data;
-		this.depot = depot;
+		this.depot = data.getCityIdForOriginal(depot);
 		this.samplingProb = samplingProb;
+		this.workspaces = ThreadLocal.withInitial(() -> new TspWorkspace(data));
+	}
+
+	/**
+	 * Sets the way the cities of each sample are selected (BERNOULLI by default).
+	 * <p>
+	 * BERNOULLI and GEOMETRIC_SKIP give samples with the same distribution (but not the same samples for a given
+	 * random source). FIXED_SIZE removes the variability of the sample size.
+	 *
+	 * @param sampling selection of the cities of each sample
+	 */
+	public void setSampling(Sampling sampling) {
+		this.sampling = sampling;
+	}
+
+	/**
+	 * Sets the way the starting tour of each sample is built (NEAREST_NEIGHBOR by default).
+	 * <p>
+	 * Note that the two constructions estimate different quantities: with WARM_START, the performance measure is
+	 * the length of the 2-Opt local optimum reached from the sub-tour induced by a good tour of the full data set,
+	 * which is usually shorter than the one reached from the NND tour of the sample.
+	 *
+	 * @param construction construction of the starting tour
+	 */
+	public void setConstruction(Construction construction) {
+		this.construction = construction;
+	}
+
+	/**
+	 * Sets the number of starting tours built for each sample by NEAREST_NEIGHBOR construction (1 by default). The
+	 * first one is started at the depot, as with a single start; the others are started at random cities of the
+	 * sample and break ties between nearest cities at random. Each starting tour is improved by at most
+	 * maxTwoOptMovesPerStart 2-opt exchanges, and only the shortest one is then improved until it is a 2-opt local
+	 * optimum.
+	 * <p>
+	 * The starts of a sample are built in parallel on the common fork-join pool, unless the replication already runs
+	 * in a fork-join pool (ParallelSimulation on the common pool, TspParameterSweep) or parallel starts are disabled
+	 * (see setParallelStarts): the starts are then built one after the other by the thread of the replication, so
+	 * that a parallel driver does not oversubscribe the processors.
+	 * <p>
+	 * The random start cities and tie breaking seeds are drawn from the random source of the replication before the
+	 * starts are forked, so results do not depend on the scheduling of the starts. The time spent on the starts is
+	 * counted as construction time, and their 2-opt exchanges are counted in the TWO_OPT_MOVES metric.
+	 * WARM_START construction ignores this setting. With several starts, the solve cache is not used.
+	 *
+	 * @param numberOfStarts         number of starting tours of each sample
+	 * @param maxTwoOptMovesPerStart maximal number of 2-opt exchanges applied to each starting tour
+	 * @throws IllegalArgumentException if numberOfStarts is not positive or maxTwoOptMovesPerStart is negative
+	 */
+	public void setMultiStart(int numberOfStarts, long maxTwoOptMovesPerStart) {
+		if (numberOfStarts < 1) {
+			throw new IllegalArgumentException("Number of starts should be positive.");
+		}
+		if (maxTwoOptMovesPerStart < 0) {
+			throw new IllegalArgumentException("Number of 2-opt moves per start should be non negative.");
+		}
+		this.numberOfStarts = numberOfStarts;
+		this.maxTwoOptMovesPerStart = maxTwoOptMovesPerStart;
+	}
+
+	/**
+	 * Sets whether the starts of a sample may be built in parallel on the common fork-join pool (true by default, see
+	 * setMultiStart). Parallel starts should be disabled when replications already run in parallel on threads which
+	 * are not those of a fork-join pool, for instance with ParallelSimulation on another executor. Results do not
+	 * depend on this setting.
+	 *
+	 * @param parallelStarts false to always build the starts in the thread of the replication
+	 */
+	public void setParallelStarts(boolean parallelStarts) {
+		this.parallelStarts = parallelStarts;
+	}
+
+	/**
+	 * Sets the largest number of cities of the samples solved exactly, by Held–Karp dynamic programming, rather than
+	 * by the construction and 2-opt heuristics (DEFAULT_EXACT_THRESHOLD by default). Exact solving takes
+	 * O(2^n * n^2) time and 2^(n-1) * (n-1) ints per worker thread, allocated once: about 0.2 MB and a fraction of a
+	 * millisecond for 12 cities, 2 MB and a few milliseconds for 16 cities.
+	 * <p>
+	 * Samples solved exactly report no 2-opt move, and the time spent solving them is counted as improvement time.
+	 * The time budget of 2-opt does not apply to them.
+	 *
+	 * @param maxNumberOfCities largest number of cities of the samples solved exactly (0 to always use heuristics)
+	 * @throws IllegalArgumentException if maxNumberOfCities is negative or greater than 20
+	 */
+	public void setExactThreshold(int maxNumberOfCities) {
+		if (maxNumberOfCities < 0 || maxNumberOfCities > HeldKarpSolver.MAX_NUMBER_OF_CITIES) {
+			throw new IllegalArgumentException("Exact threshold should be between 0 and "
+					+ HeldKarpSolver.MAX_NUMBER_OF_CITIES + ".");
+		}
+		this.exactThreshold = maxNumberOfCities;
+	}
+
+	/**
+	 * Sets a cache of the tour lengths of already solved samples (none by default). When a sample has the same
+	 * subset of cities as a cached one, its tour length is returned without solving it again.
+	 * <p>
+	 * The cache may be shared with other experiments on the same data set, provided they are configured the same way.
+	 * It is not used while several starts are built for each sample (see setMultiStart) or while the 2-opt time
+	 * budget is limited (see setTwoOptTimeBudget): the length of a sample then depends on random draws or on timing,
+	 * so returning a cached length would correlate the replications of a subset (and skipping the draws of the
+	 * starts would change all later samples).
+	 *
+	 * @param solveCache cache to be used, or null to disable caching
+	 */
+	public void setSolveCache(TspSolveCache solveCache) {
+		this.solveCache = solveCache;
+	}
+
+	/**
+	 * Sets a sink receiving the record of each replication (none by default): sample size, tour length and duration of
+	 * the replication.
+	 *
+	 * @param resultsSink sink to be used, or null to disable recording
+	 */
+	public void setResultsSink(ResultsSink resultsSink) {
+		this.resultsSink = resultsSink;
+	}
+
+	/**
+	 * Sets the maximal duration of the 2-opt improvement of each replication (no limit by default). Once the budget
+	 * is spent, the current tour is returned even if it is not a 2-opt local optimum, so that the cost of a
+	 * replication is bounded, at the price of results which depend on the speed of the machine. The solve cache is
+	 * not used while the budget is limited.
+	 *
+	 * @param timeBudgetNanos maximal duration in nanoseconds, or Long.MAX_VALUE for no limit
+	 * @throws IllegalArgumentException if timeBudgetNanos is not positive
+	 */
+	public void setTwoOptTimeBudget(long timeBudgetNanos) {
+		if (timeBudgetNanos <= 0) {
+			throw new IllegalArgumentException("2-opt time budget should be positive.");
+		}
+		this.twoOptTimeBudget = timeBudgetNanos;
+	}
+
+	/**
+	 * Returns the maximal duration of the 2-opt improvement of each replication.
+	 *
+	 * @return maximal duration in nanoseconds, or Long.MAX_VALUE if there is no limit
+	 */
+	public long getTwoOptTimeBudget() {
+		return twoOptTimeBudget;
+	}
+
+	/**
+	 * Returns the total time spent drawing samples (including the solve cache lookups) by the replications of
+	 * execute since creation or last call to resetPhaseTimes, over all threads.
+	 *
+	 * @return time in nanoseconds
+	 */
+	public long getSamplingTime() {
+		return samplingTime.sum();
+	}
+
+	/**
+	 * Returns the total time spent building starting tours by the replications of execute since creation or last
+	 * call to resetPhaseTimes, over all threads.
+	 *
+	 * @return time in nanoseconds
+	 */
+	public long getConstructionTime() {
+		return constructionTime.sum();
+	}
+
+	/**
+	 * Returns the total time spent improving tours with 2-opt by the replications of execute since creation or last
+	 * call to resetPhaseTimes, over all threads.
+	 *
+	 * @return time in nanoseconds
+	 */
+	public long getImprovementTime() {
+		return improvementTime.sum();
+	}
+
+	/**
+	 * Resets the times returned by getSamplingTime, getConstructionTime and getImprovementTime.
+	 */
+	public void resetPhaseTimes() {
+		samplingTime.reset();
+		constructionTime.reset();
+		improvementTime.reset();
+	}
+
+	/**
+	 * Sets the tour of the full data set used by WARM_START construction, for instance a known optimal tour. If no
+	 * tour is set, one is computed on first use by applying the NND heuristic from the depot followed by the
+	 * 2-Opt-Best heuristic.
+	 *
+	 * @param tour permutation of the indices of the cities in the data file (see TspDataSet.getOriginalCityId)
+	 * @throws IllegalArgumentException if tour is not a permutation of the city indices of the full data set
+	 */
+	public void setReferenceTour(int[] tour) {
+		if (tour.length != data.getNumberOfCities()) {
+			throw new IllegalArgumentException("Reference tour should visit every city of the data set.");
+		}
+		boolean[] seen = new boolean[tour.length];
+		for (int city : tour) {
+			if (city < 0 || city >= tour.length || seen[city]) {
+				throw new IllegalArgumentException("Reference tour should be a permutation of the city indices.");
+			}
+			seen[city] = true;
+		}
+		int[] renumberedTour = new int[tour.length];
+		for (int k = 0; k < tour.length; k++) {
+			renumberedTour[k] = data.getCityIdForOriginal(tour[k]);
+		}
+		referenceTour = renumberedTour;
+	}
+
+	/**
+	 * Sets the selection probability of each city used by TILTED sampling.
+	 *
+	 * @param selectionProbs probability of selection of each city of the full data set (the entry of the depot is
+	 *                       ignored), indexed as the cities of the data set
+	 * @throws IllegalArgumentException if there is not one probability per city, if a probability (except the one of
+	 *                                  the depot) is not strictly between 0 and 1, or if samplingProb is 0 or 1
+	 */
+	public void setTiltedSelectionProbabilities(double[] selectionProbs) {
+		tilt = new Tilt(selectionProbs.clone(), data.getNumberOfCities(), depot, samplingProb);
+	}
+
+	/**
+	 * Returns the selection probability of each city used by TILTED sampling.
+	 *
+	 * @return probability of selection of each city of the full data set
+	 */
+	public double[] getTiltedSelectionProbabilities() {
+		return getTilt().selectionProbs.clone();
+	}
+
+	/**
+	 * Returns the depot of the samples (index in the data set).
+	 *
+	 * @return depot index
+	 */
+	int getDepot() {
+		return depot;
+	}
+
+	/**
+	 * Returns the sampling probability of the cities.
+	 *
+	 * @return sampling probability
+	 */
+	public double getSamplingProb() {
+		return samplingProb;
+	}
+
+	/**
+	 * Returns the last sample drawn by the current thread.
+	 *
+	 * @return sample of the current thread
+	 */
+	TspSampledDataWithDepot getLastSample() {
+		return workspaces.get().sample;
+	}
+
+	private Tilt getTilt() {
+		Tilt current = tilt;
+		if (current == null) {
+			double[] uniform = new double[data.getNumberOfCities()];
+			Arrays.fill(uniform, samplingProb);
+			current = new Tilt(uniform, uniform.length, depot, samplingProb);
+			tilt = current;
+		}
+		return current;
 	}
 
 	/**
 	 * Selects a sample of the cities, each with probability samplingProb (except depot which is always selected).
 	 * <p>
-	 * Finds a sub-optimal tour by applying the NND heuristic followed by the 2-Opt-Best heuristic and returns
-	 * the length of computed solution.
+	 * Finds a sub-optimal tour by applying the NND heuristic (or by restricting a tour of the full data set to the
+	 * sample, see setConstruction) followed by the 2-Opt-Best heuristic and returns the length of computed solution.
 	 *
 	 * @param rnd random source to be used to simulate the experiment
 	 * @return length of the computed tour
 	 */
 	@Override
 	public double execute(Random rnd) {
-		// On obtient un sample des villes de data
-		TspSampledDataWithDepot tspSampledDataWithDepot = new TspSampledDataWithDepot(data, depot, samplingProb, rnd);
+		return run(workspaces.get(), rnd);
+	}
 
-		// On crée un tspTour avec ce nouveau data set
-		TspTour tspTour = new TspTour(tspSampledDataWithDepot);
+	@Override
+	public int getNumberOfMetrics() {
+		return 4;
+	}
 
-		// On applique le nearest neighbor tour finder
-		tspTour.CreateNearestNeighborFromBothEndsTourSolution(depot);
+	/**
+	 * Same as execute(Random), also reporting the sample size and the number of 2-opt moves.
+	 *
+	 * @param rnd     random source to be used to simulate the experiment
+	 * @param results array receiving the tour length, the sample size, the number of 2-opt moves and the likelihood
+	 *                ratio (see TOUR_LENGTH, SAMPLE_SIZE, TWO_OPT_MOVES and LIKELIHOOD_RATIO)
+	 */
+	@Override
+	public void execute(Random rnd, double[] results) {
+		TspWorkspace workspace = workspaces.get();
+		results[TOUR_LENGTH] = run(workspace, rnd);
+		results[SAMPLE_SIZE] = workspace.sample.getNumberOfCities();
+		results[TWO_OPT_MOVES] = workspace.numberOfTwoOptMoves;
+		results[LIKELIHOOD_RATIO] = workspace.likelihoodRatio;
+	}
 
-		// On applique le 2-opt best
-		tspTour.applyTwoOptBest();
+	/**
+	 * Solves a new sample and records it in the results sink if any.
+	 *
+	 * @param workspace buffers of the current thread
+	 * @param rnd       random source to be used to create the sample
+	 * @return length of the computed tour
+	 */
+	private long run(TspWorkspace workspace, Random rnd) {
+		ResultsSink sink = resultsSink;
+		if (sink == null) {
+			return solveSample(workspace, rnd);
+		}
+
+		long start = System.nanoTime();
+		long length = solveSample(workspace, rnd);
+		sink.append(workspace.sample.getNumberOfCities(), length, System.nanoTime() - start);
+		return length;
+	}
+
+	/**
+	 * Draws a sample in workspace.sample and returns the length of the tour computed for it.
+	 *
+	 * @param workspace buffers of the current thread
+	 * @param rnd       random source to be used to create the sample
+	 * @return length of the computed tour
+	 */
+	private long solveSample(TspWorkspace workspace, Random rnd) {
+		long start = System.nanoTime();
+		drawSample(workspace, rnd);
+
+		// Si ce sample a déjà été résolu, on retourne la longueur en cache
+		TspSolveCache cache = isSolveCacheUsable() ? solveCache : null;
+		if (cache != null) {
+			workspace.cacheKey.set(workspace.sample);
+			long cachedLength = cache.get(workspace.cacheKey);
+			if (cachedLength >= 0) {
+				workspace.numberOfTwoOptMoves = 0;
+				samplingTime.add(System.nanoTime() - start);
+				return cachedLength;
+			}
+		}
+		long sampled = System.nanoTime();
+		samplingTime.add(sampled - start);
+
+		// Les petits samples sont résolus de manière exacte
+		if (workspace.sample.getNumberOfCities() <= exactThreshold) {
+			long length = solveExactly(workspace);
+			if (length >= 0) {
+				improvementTime.add(System.nanoTime() - sampled);
+				workspace.numberOfTwoOptMoves = 0;
+				if (cache != null) {
+					cache.put(workspace.cacheKey, length);
+				}
+				return length;
+			}
+		}
+
+		TspTour tspTour = workspace.tour;
+		long startMoves = 0;
+		if (numberOfStarts > 1 && construction == Construction.NEAREST_NEIGHBOR) {
+			tspTour = constructMultiStart(workspace, rnd);
+			startMoves = tspTour.getNumberOfTwoOptMoves();
+		} else {
+			constructTour(workspace);
+		}
+		long constructed = System.nanoTime();
+		constructionTime.add(constructed - sampled);
+
+		// On applique le 2-opt best, dans la limite du budget de temps
+		tspTour.applyTwoOptBest(Long.MAX_VALUE, twoOptTimeBudget);
+		workspace.numberOfTwoOptMoves = startMoves + tspTour.getNumberOfTwoOptMoves();
+		improvementTime.add(System.nanoTime() - constructed);
+
+		if (cache != null) {
+			cache.put(workspace.cacheKey, tspTour.getTourLength());
+		}
 
 		return tspTour.getTourLength();
 	}
+
+	/**
+	 * Returns true if the length of a sample only depends on its subset of cities, so that it may be cached: single
+	 * start and no 2-opt time budget (see setSolveCache).
+	 */
+	private boolean isSolveCacheUsable() {
+		return (numberOfStarts == 1 || construction != Construction.NEAREST_NEIGHBOR)
+				&& twoOptTimeBudget == Long.MAX_VALUE;
+	}
+
+	/**
+	 * Draws a sample of the cities in workspace.sample.
+	 *
+	 * @param workspace buffers of the current thread
+	 * @param rnd       random source to be used to create the sample
+	 */
+	private void drawSample(TspWorkspace workspace, Random rnd) {
+		// On obtient un sample des villes de data
+		TspSampledDataWithDepot tspSampledDataWithDepot = workspace.sample;
+		workspace.likelihoodRatio = 1.0;
+		switch (sampling) {
+			case GEOMETRIC_SKIP:
+				tspSampledDataWithDepot.resampleGeometric(depot, samplingProb, rnd);
+				break;
+			case FIXED_SIZE:
+				int numberOfSelectedCities = (int) Math.round(samplingProb * (data.getNumberOfCities() - 1));
+				tspSampledDataWithDepot.resampleFixedSize(depot, numberOfSelectedCities, rnd);
+				break;
+			case TILTED:
+				Tilt currentTilt = getTilt();
+				tspSampledDataWithDepot.resample(depot, currentTilt.selectionProbs, rnd);
+				workspace.likelihoodRatio = currentTilt.likelihoodRatio(tspSampledDataWithDepot);
+				break;
+			default:
+				tspSampledDataWithDepot.resample(depot, samplingProb, rnd);
+		}
+	}
+
+	/**
+	 * Creates the starting tour of workspace.sample in workspace.tour (see setConstruction).
+	 *
+	 * @param workspace buffers of the current thread
+	 */
+	private void constructTour(TspWorkspace workspace) {
+		// On réinitialise le tspTour avec ce nouveau data set
+		TspTour tspTour = workspace.tour;
+		tspTour.reset();
+
+		if (construction == Construction.WARM_START) {
+			// On restreint le tour de référence aux villes du sample
+			createInducedTour(workspace);
+		} else {
+			// On applique le nearest neighbor tour finder depuis le dépôt (toujours d'indice 0 dans le sample)
+			tspTour.CreateNearestNeighborFromBothEndsTourSolution(0);
+		}
+	}
+
+	/**
+	 * Computes an optimal tour of workspace.sample in workspace.tour.
+	 *
+	 * @param workspace buffers of the current thread
+	 * @return length of the optimal tour, or -1 if the distances are too large for the exact solver
+	 */
+	private long solveExactly(TspWorkspace workspace) {
+		if (workspace.exactSolver == null) {
+			workspace.exactSolver = new HeldKarpSolver();
+		}
+		long length = workspace.exactSolver.solve(workspace.sample, workspace.sequence);
+		if (length >= 0) {
+			workspace.tour.reset();
+			workspace.tour.createTourFromSequence(workspace.sequence);
+		}
+		return length;
+	}
+
+	/**
+	 * Builds numberOfStarts starting tours of workspace.sample, in parallel if possible, each improved by at most
+	 * maxTwoOptMovesPerStart 2-opt exchanges (see setMultiStart).
+	 *
+	 * @param workspace buffers of the current thread
+	 * @param rnd       random source used to draw the start cities and tie breaking seeds
+	 * @return the shortest starting tour (the first one in case of ties)
+	 */
+	private TspTour constructMultiStart(TspWorkspace workspace, Random rnd) {
+		int starts = numberOfStarts;
+		StartTask[] tasks = workspace.startTasks;
+		if (tasks == null || tasks.length != starts) {
+			// Le premier départ réutilise le tour du workspace, les autres ont leur propre tour
+			tasks = new StartTask[starts];
+			tasks[0] = new StartTask(workspace.tour);
+			for (int k = 1; k < starts; ++k) {
+				tasks[k] = (workspace.startTasks != null && k < workspace.startTasks.length)
+						? workspace.startTasks[k] : new StartTask(new TspTour(workspace.sample, data.getNumberOfCities()));
+			}
+			workspace.startTasks = tasks;
+		}
+
+		int sampleSize = workspace.sample.getNumberOfCities();
+		for (int k = 0; k < starts; ++k) {
+			StartTask task = tasks[k];
+			task.reinitialize();
+			// Départ 0 : dépôt, égalités en faveur du plus petit indice (comme avec un seul départ)
+			task.start = (k == 0) ? 0 : rnd.nextInt(sampleSize);
+			task.tieBreakSeed = (k == 0) ? 0 : (rnd.nextLong() | 1);
+			task.maxMoves = maxTwoOptMovesPerStart;
+		}
+		// Nested parallelism would only oversubscribe the processors already busy with other replications
+		if (!parallelStarts || ForkJoinTask.inForkJoinPool() || ForkJoinPool.getCommonPoolParallelism() < 2) {
+			for (StartTask task : tasks) {
+				task.invoke();
+			}
+		} else {
+			ForkJoinTask.invokeAll(tasks);
+		}
+
+		TspTour best = tasks[0].tour;
+		for (int k = 1; k < starts; ++k) {
+			if (tasks[k].tour.getTourLength() < best.getTourLength()) {
+				best = tasks[k].tour;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the cheap level of a two-level simulation of this experiment (see MultilevelSimulation): each run
+	 * draws a sample and returns the length of its starting tour (see setConstruction, a single start being used)
+	 * after at most maxTwoOptMoves 2-opt exchanges (0 for the starting tour itself), whatever the size of the sample.
+	 * The solve cache and the results sink are not used.
+	 *
+	 * @param maxTwoOptMoves maximal number of 2-opt exchanges of the cheap level
+	 * @return experiment returning the length of the truncated solution of a sample
+	 * @throws IllegalStateException if sampling is TILTED (runs would have to be weighted)
+	 */
+	public Experiment getTruncatedLevel(long maxTwoOptMoves) {
+		checkMultilevelSupported();
+		return rnd -> {
+			checkMultilevelSupported();
+			TspWorkspace workspace = workspaces.get();
+			drawSample(workspace, rnd);
+			constructTour(workspace);
+			workspace.tour.applyTwoOptBest(maxTwoOptMoves);
+			return workspace.tour.getTourLength();
+		};
+	}
+
+	/**
+	 * Returns the coupled levels of a two-level simulation of this experiment (see MultilevelSimulation): each run
+	 * draws a sample and reports the length of its solution truncated after maxTwoOptMoves 2-opt exchanges (metric
+	 * 0, as getTruncatedLevel) and the length of the solution of execute(Random) for the same sample (metric 1): exact
+	 * below the exact threshold, from the best of several starts with multi-start, within the 2-opt time budget if
+	 * any. With a single start, the final solution is reached by continuing 2-opt from the truncated one, so a
+	 * coupled run costs about a run of execute(Random). The solve cache and the results sink are not used.
+	 *
+	 * @param maxTwoOptMoves maximal number of 2-opt exchanges of the cheap level
+	 * @return experiment returning the lengths of the truncated and of the final solutions of the same sample
+	 * @throws IllegalStateException if sampling is TILTED (runs would have to be weighted)
+	 */
+	public MultiExperiment getCoupledLevels(long maxTwoOptMoves) {
+		checkMultilevelSupported();
+		return new MultiExperiment() {
+			@Override
+			public int getNumberOfMetrics() {
+				return 2;
+			}
+
+			@Override
+			public void execute(Random rnd, double[] results) {
+				checkMultilevelSupported();
+				TspWorkspace workspace = workspaces.get();
+				drawSample(workspace, rnd);
+				constructTour(workspace);
+				long start = System.nanoTime();
+				TspTour tspTour = workspace.tour;
+				tspTour.applyTwoOptBest(maxTwoOptMoves);
+				results[0] = tspTour.getTourLength();
+
+				// Niveau fin : même résolution que execute(Random)
+				if (workspace.sample.getNumberOfCities() <= exactThreshold) {
+					long length = solveExactly(workspace);
+					if (length >= 0) {
+						results[1] = length;
+						return;
+					}
+				}
+				long budget = twoOptTimeBudget;
+				if (numberOfStarts > 1 && construction == Construction.NEAREST_NEIGHBOR) {
+					tspTour = constructMultiStart(workspace, rnd);
+					start = System.nanoTime();
+				}
+				if (budget != Long.MAX_VALUE) {
+					// Le budget de execute(Random) couvre aussi les échanges déjà faits depuis le tour de départ
+					budget = Math.max(1, budget - (System.nanoTime() - start));
+				}
+				tspTour.applyTwoOptBest(Long.MAX_VALUE, budget);
+				results[1] = tspTour.getTourLength();
+			}
+		};
+	}
+
+	/**
+	 * Checks that runs of the levels of a two-level simulation need no weighting.
+	 *
+	 * @throws IllegalStateException if sampling is TILTED
+	 */
+	private void checkMultilevelSupported() {
+		if (sampling == Sampling.TILTED) {
+			throw new IllegalStateException("Two-level simulation does not support TILTED sampling.");
+		}
+	}
+
+	/**
+	 * Creates in workspace.tour the sub-tour of the reference tour visiting only the cities of workspace.sample.
+	 *
+	 * @param workspace buffers of the current thread
+	 */
+	private void createInducedTour(TspWorkspace workspace) {
+		int[] reference = getReferenceTour();
+		int[] sequence = workspace.sequence;
+		TspSampledDataWithDepot sample = workspace.sample;
+
+		int length = 0;
+		for (int city : reference) {
+			int i = sample.getSampleIndexOf(city);
+			if (i >= 0) {
+				sequence[length++] = i;
+			}
+		}
+		workspace.tour.createTourFromSequence(sequence);
+	}
+
+	/**
+	 * Returns the reference tour of the full data set, computing it on first call if none was set.
+	 *
+	 * @return cities of the full data set in reference tour order
+	 */
+	private int[] getReferenceTour() {
+		int[] reference = referenceTour;
+		if (reference == null) {
+			synchronized (this) {
+				reference = referenceTour;
+				if (reference == null) {
+					TspTour fullTour = new TspTour(data);
+					fullTour.CreateNearestNeighborFromBothEndsTourSolution(depot);
+					fullTour.applyTwoOptBest();
+
+					reference = new int[data.getNumberOfCities()];
+					for (int pos = 1; pos <= reference.length; ++pos) {
+						reference[pos - 1] = fullTour.getCityAtPosition(pos);
+					}
+					referenceTour = reference;
+				}
+			}
+		}
+		return reference;
+	}
+
+	/**
+	 * Construction of one starting tour of a multi-start construction: NND heuristic from start, followed by at most
+	 * maxMoves 2-opt exchanges. Tasks are kept in the workspace and reinitialized for each sample.
+	 */
+	static final class StartTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final TspTour tour;
+		private int start;
+		private long tieBreakSeed;
+		private long maxMoves;
+
+		private StartTask(TspTour tour) {
+			this.tour = tour;
+		}
+
+		@Override
+		protected void compute() {
+			tour.reset();
+			tour.CreateNearestNeighborFromBothEndsTourSolution(start, tieBreakSeed);
+			tour.applyTwoOptBest(maxMoves);
+		}
+	}
+
+	/**
+	 * Selection probabilities q of TILTED sampling. The log likelihood ratio of a sample S is
+	 * sum over cities i not in S of log((1 - p) / (1 - q_i)) + sum over cities i in S of log(p / q_i), i.e. the sum
+	 * over all cities of the first term plus, for each selected city, the difference of both terms.
+	 */
+	private static final class Tilt {
+		private final double[] selectionProbs;
+		// Log likelihood ratio of the sample reduced to the depot
+		private final double logRatioOfDepotOnly;
+		// Increase of the log likelihood ratio when each city is selected
+		private final double[] logRatioIncrease;
+
+		private Tilt(double[] selectionProbs, int numberOfCities, int depot, double samplingProb) {
+			if (selectionProbs.length != numberOfCities) {
+				throw new IllegalArgumentException("There should be one selection probability per city.");
+			}
+			if (samplingProb <= 0.0 || samplingProb >= 1.0) {
+				throw new IllegalArgumentException("Sampling probability should be strictly between 0 and 1.");
+			}
+			this.selectionProbs = selectionProbs;
+			this.logRatioIncrease = new double[selectionProbs.length];
+			double logRatio = 0.0;
+			for (int i = 0; i < selectionProbs.length; i++) {
+				if (i == depot) {
+					continue;
+				}
+				double q = selectionProbs[i];
+				if (!(q > 0.0 && q < 1.0)) {
+					throw new IllegalArgumentException("Selection probabilities should be strictly between 0 and 1.");
+				}
+				double notSelected = Math.log((1.0 - samplingProb) / (1.0 - q));
+				logRatio += notSelected;
+				logRatioIncrease[i] = Math.log(samplingProb / q) - notSelected;
+			}
+			this.logRatioOfDepotOnly = logRatio;
+		}
+
+		private double likelihoodRatio(TspSampledDataWithDepot sample) {
+			double logRatio = logRatioOfDepotOnly;
+			int[] ids = sample.getIdsInFullData();
+			for (int k = 1; k < sample.getNumberOfCities(); k++) {
+				logRatio += logRatioIncrease[ids[k]];
+			}
+			return Math.exp(logRatio);
+		}
+	}
 }
@@ -0,0 +1,26 @@
+package tsp;
+
+import montecarlo.Experiment;
+import montecarlo.ExperimentFactory;
+
+import java.io.FileInputStream;
+
+/**
+ * Creates TspExperiment instances in the worker processes of a distributed simulation.
+ * <p>
+ * Arguments: &lt;data file&gt; &lt;depot&gt; &lt;sampling probability&gt;
+ */
+public class TspExperimentFactory implements ExperimentFactory {
+
+	@Override
+	public Experiment create(String[] args) throws Exception {
+		if (args.length != 3) {
+			throw new IllegalArgumentException("Arguments should be: <data file> <depot> <sampling probability>");
+		}
+		TspDataSet data;
+		try (FileInputStream in = new FileInputStream(args[0])) {
+			data = new TspDataSet(in);
+		}
+		return new TspExperiment(data, Integer.parseInt(args[1]), Double.parseDouble(args[2]));
+	}
+}
@@ -0,0 +1,70 @@
+package tsp;
+
+/**
+ * Lists of the nearest neighbors of each city of a TspDataSet, used to restrict the candidates examined by the
+ * incremental operations of TspTour. The lists are computed once, with n * (n - 1) distance evaluations, and are
+ * immutable afterwards.
+ */
+final class TspNeighborLists {
+
+	private final int numberOfNeighbors;
+	// Neighbors of city i by increasing distance (ties by increasing index), at i * numberOfNeighbors
+	private final int[] neighbors;
+
+	/**
+	 * Computes the numberOfNeighbors nearest neighbors of each city of data (fewer if data has fewer cities).
+	 *
+	 * @param data              full data set
+	 * @param numberOfNeighbors number of neighbors of each city
+	 */
+	TspNeighborLists(TspDataSet data, int numberOfNeighbors) {
+		int n = data.getNumberOfCities();
+		int k = Math.max(0, Math.min(numberOfNeighbors, n - 1));
+		this.numberOfNeighbors = k;
+		this.neighbors = new int[n * k];
+
+		int[] distances = new int[k];
+		for (int i = 0; i < n; ++i) {
+			int base = i * k;
+			int size = 0;
+			for (int j = 0; j < n; ++j) {
+				if (j == i) {
+					continue;
+				}
+				int dist = data.getDistance(i, j);
+				if (size == k && dist >= distances[k - 1]) {
+					continue;
+				}
+				// Insertion in the sorted list, dropping its last entry if it is full
+				int pos = (size < k) ? size++ : k - 1;
+				while (pos > 0 && distances[pos - 1] > dist) {
+					distances[pos] = distances[pos - 1];
+					neighbors[base + pos] = neighbors[base + pos - 1];
+					--pos;
+				}
+				distances[pos] = dist;
+				neighbors[base + pos] = j;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of neighbors of each city.
+	 *
+	 * @return number of neighbors
+	 */
+	int getNumberOfNeighbors() {
+		return numberOfNeighbors;
+	}
+
+	/**
+	 * Returns the neighbor of given rank of a city (rank 0 being the nearest one).
+	 *
+	 * @param city city index in the full data set
+	 * @param rank rank of the neighbor, between 0 and getNumberOfNeighbors() - 1
+	 * @return index of the neighbor in the full data set
+	 */
+	int getNeighbor(int city, int rank) {
+		return neighbors[city * numberOfNeighbors + rank];
+	}
+}
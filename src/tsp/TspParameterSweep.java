@@ -0,0 +1,332 @@
+package tsp;
+
+import montecarlo.CIHalfWidthRule;
+import montecarlo.DistributedSimulation;
+import montecarlo.MonteCarloSimulation;
+import montecarlo.StoppingRule;
+import montecarlo.XoshiroRandom;
+import statistics.StatCollector;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Runs TspExperiment simulations over a grid of configurations (instance x depot x sampling probability).
+ * <p>
+ * Each instance is read (and its distance matrix computed) only once, and shared by all configurations using it.
+ * Every configuration is simulated by batches of additionalNumberOfRuns runs, scheduled on a shared work-stealing
+ * pool, and stops independently when its own stopping rule (see CIHalfWidthRule) is satisfied. As in
+ * DistributedSimulation, batches use seeds derived from the seed of the configuration and are merged in batch order,
+ * so results do not depend on scheduling.
+ */
+public class TspParameterSweep {
+
+	// Instances, by name
+	private final Map<String, TspDataSet> instances = new LinkedHashMap<>();
+	// Grid
+	private final List<Integer> depots = new ArrayList<>();
+	private final List<Double> samplingProbs = new ArrayList<>();
+
+	/**
+	 * Adds an instance to the grid.
+	 *
+	 * @param name name of the instance in the results table
+	 * @param data instance data set
+	 */
+	public void addInstance(String name, TspDataSet data) {
+		instances.put(name, data);
+	}
+
+	/**
+	 * Reads an instance from a file and adds it to the grid, using the file name as instance name.
+	 *
+	 * @param fileName data file to be read
+	 * @throws IOException         if the file cannot be read
+	 * @throws TspParsingException if file content does not conform to expected format
+	 */
+	public void addInstance(String fileName) throws IOException, TspParsingException {
+		try (FileInputStream in = new FileInputStream(fileName)) {
+			addInstance(fileName, new TspDataSet(in));
+		}
+	}
+
+	/**
+	 * Adds a depot to the grid.
+	 *
+	 * @param depot central depot city index
+	 */
+	public void addDepot(int depot) {
+		depots.add(depot);
+	}
+
+	/**
+	 * Adds a sampling probability to the grid.
+	 *
+	 * @param samplingProb probability of selection for each city (except depot)
+	 */
+	public void addSamplingProb(double samplingProb) {
+		samplingProbs.add(samplingProb);
+	}
+
+	/**
+	 * Simulates every configuration of the grid until the half width of its confidence interval is no more than
+	 * maxHalfWidth, and returns the results in grid order (instance, then depot, then sampling probability).
+	 *
+	 * @param level                  confidence level of the confidence intervals
+	 * @param maxHalfWidth           maximal half width of the confidence intervals
+	 * @param initialNumberOfRuns    initial number of runs to be performed for each configuration
+	 * @param additionalNumberOfRuns additional number of runs to be performed if C.I. is too wide (batch size)
+	 * @param seed                   seed of the sweep
+	 * @param pool                   pool running the batches
+	 * @return results of each configuration
+	 */
+	public List<Result> run(double level,
+							double maxHalfWidth,
+							long initialNumberOfRuns,
+							long additionalNumberOfRuns,
+							long seed,
+							ForkJoinPool pool) {
+		if (additionalNumberOfRuns <= 0) {
+			throw new IllegalArgumentException("Batch size should be positive.");
+		}
+
+		List<Configuration> configurations = new ArrayList<>();
+		for (Map.Entry<String, TspDataSet> instance : instances.entrySet()) {
+			for (int depot : depots) {
+				for (double samplingProb : samplingProbs) {
+					configurations.add(new Configuration(instance.getKey(), instance.getValue(), depot, samplingProb,
+							new CIHalfWidthRule(level, maxHalfWidth, initialNumberOfRuns, additionalNumberOfRuns),
+							additionalNumberOfRuns, DistributedSimulation.getBatchSeed(seed, configurations.size())));
+				}
+			}
+		}
+
+		CountDownLatch remaining = new CountDownLatch(configurations.size());
+		for (Configuration configuration : configurations) {
+			configuration.start(pool, remaining);
+		}
+		try {
+			remaining.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the sweep to complete.", e);
+		}
+
+		List<Result> results = new ArrayList<>();
+		for (Configuration configuration : configurations) {
+			if (configuration.error != null) {
+				throw new IllegalStateException("Simulation of a configuration failed.", configuration.error);
+			}
+			results.add(new Result(configuration.instanceName, configuration.depot, configuration.samplingProb,
+					configuration.stat, level));
+		}
+		return results;
+	}
+
+	/**
+	 * Prints results as a table, one configuration per line.
+	 *
+	 * @param results results returned by run
+	 * @param out     stream to print to
+	 */
+	public static void printTable(List<Result> results, PrintStream out) {
+		out.printf("%-24s %6s %8s %10s %14s %12s%n", "instance", "depot", "prob", "runs", "mean", "half-width");
+		for (Result r : results) {
+			out.printf("%-24s %6d %8.4f %10d %14.2f %12.2f%n", r.getInstanceName(), r.getDepot(), r.getSamplingProb(),
+					r.getNumberOfRuns(), r.getAverage(), r.getConfidenceIntervalHalfWidth());
+		}
+	}
+
+	/**
+	 * Runs a sweep from the command line and prints the results table.
+	 * <p>
+	 * Arguments: &lt;data files&gt; &lt;depots&gt; &lt;sampling probabilities&gt; &lt;max half width&gt;
+	 * [&lt;initial runs&gt; &lt;additional runs&gt; &lt;seed&gt;], lists being comma separated.
+	 */
+	public static void main(String[] args) throws IOException, TspParsingException {
+		if (args.length != 4 && args.length != 7) {
+			System.err.println("Usage: TspParameterSweep <files> <depots> <probs> <max half width> "
+					+ "[<initial runs> <additional runs> <seed>]");
+			System.exit(1);
+		}
+
+		TspParameterSweep sweep = new TspParameterSweep();
+		for (String file : args[0].split(",")) {
+			sweep.addInstance(file);
+		}
+		for (String depot : args[1].split(",")) {
+			sweep.addDepot(Integer.parseInt(depot));
+		}
+		for (String prob : args[2].split(",")) {
+			sweep.addSamplingProb(Double.parseDouble(prob));
+		}
+		double maxHalfWidth = Double.parseDouble(args[3]);
+		long initialNumberOfRuns = (args.length == 7) ? Long.parseLong(args[4]) : 2000;
+		long additionalNumberOfRuns = (args.length == 7) ? Long.parseLong(args[5]) : 500;
+		long seed = (args.length == 7) ? Long.parseLong(args[6]) : 20200525;
+
+		printTable(sweep.run(0.95, maxHalfWidth, initialNumberOfRuns, additionalNumberOfRuns, seed,
+				ForkJoinPool.commonPool()), System.out);
+	}
+
+	/**
+	 * Result of the simulation of one configuration.
+	 */
+	public static final class Result {
+		private final String instanceName;
+		private final int depot;
+		private final double samplingProb;
+		private final StatCollector stat;
+		private final double level;
+
+		private Result(String instanceName, int depot, double samplingProb, StatCollector stat, double level) {
+			this.instanceName = instanceName;
+			this.depot = depot;
+			this.samplingProb = samplingProb;
+			this.stat = stat;
+			this.level = level;
+		}
+
+		public String getInstanceName() {
+			return instanceName;
+		}
+
+		public int getDepot() {
+			return depot;
+		}
+
+		public double getSamplingProb() {
+			return samplingProb;
+		}
+
+		public long getNumberOfRuns() {
+			return stat.getNumberOfObs();
+		}
+
+		public double getAverage() {
+			return stat.getAverage();
+		}
+
+		public double getConfidenceIntervalHalfWidth() {
+			return stat.getConfidenceIntervalHalfWidth(level);
+		}
+
+		/**
+		 * Returns the collector of the results of this configuration.
+		 *
+		 * @return collector of the results
+		 */
+		public StatCollector getStatCollector() {
+			return stat;
+		}
+	}
+
+	/**
+	 * State of the simulation of one configuration. Batch completions may be reported by any thread of the pool.
+	 */
+	private static final class Configuration {
+		private final String instanceName;
+		private final int depot;
+		private final double samplingProb;
+		private final TspExperiment experiment;
+		private final StoppingRule rule;
+		private final long batchSize;
+		private final long seed;
+		private final StatCollector stat = new StatCollector();
+		// Results of batches completed out of order
+		private final Map<Long, StatCollector> pendingResults = new HashMap<>();
+		private long nextBatch;
+		private long nextBatchToMerge;
+		private long targetBatches;
+		private ForkJoinPool pool;
+		private CountDownLatch remaining;
+		private boolean finished;
+		private volatile Throwable error;
+
+		private Configuration(String instanceName, TspDataSet data, int depot, double samplingProb,
+							  StoppingRule rule, long batchSize, long seed) {
+			this.instanceName = instanceName;
+			this.depot = depot;
+			this.samplingProb = samplingProb;
+			this.experiment = new TspExperiment(data, depot, samplingProb);
+			this.rule = rule;
+			this.batchSize = batchSize;
+			this.seed = seed;
+		}
+
+		private synchronized void start(ForkJoinPool pool, CountDownLatch remaining) {
+			this.pool = pool;
+			this.remaining = remaining;
+			updateTarget();
+		}
+
+		/**
+		 * Asks the rule for the next target and submits the batches needed to reach it, or signals completion.
+		 */
+		private void updateTarget() {
+			targetBatches = (rule.getTargetNumberOfRuns(stat) + batchSize - 1) / batchSize;
+			if (nextBatchToMerge >= targetBatches) {
+				finish();
+				return;
+			}
+			while (nextBatch < targetBatches) {
+				long batch = nextBatch++;
+				pool.execute(() -> runBatch(batch));
+			}
+		}
+
+		/**
+		 * Simulates a batch and merges it. Any failure, including errors such as OutOfMemoryError, completes the
+		 * configuration, so that the sweep never waits for it forever.
+		 */
+		private void runBatch(long batch) {
+			StatCollector batchStat = new StatCollector();
+			try {
+				MonteCarloSimulation.simulateNRuns(experiment, batchSize,
+						new XoshiroRandom(DistributedSimulation.getBatchSeed(seed, batch)), batchStat);
+				complete(batch, batchStat);
+			} catch (Throwable e) {
+				fail(e);
+			}
+		}
+
+		private synchronized void fail(Throwable e) {
+			if (error == null) {
+				error = e;
+			}
+			finish();
+		}
+
+		/**
+		 * Signals completion of this configuration (only once).
+		 */
+		private void finish() {
+			if (!finished) {
+				finished = true;
+				remaining.countDown();
+			}
+		}
+
+		private synchronized void complete(long batch, StatCollector batchStat) {
+			if (finished) {
+				return;
+			}
+			pendingResults.put(batch, batchStat);
+			StatCollector next;
+			while ((next = pendingResults.remove(nextBatchToMerge)) != null) {
+				stat.merge(next);
+				if (++nextBatchToMerge == targetBatches) {
+					updateTarget();
+				}
+			}
+		}
+	}
+}
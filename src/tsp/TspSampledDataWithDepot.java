@@ -1,5 +1,6 @@
 package tsp;
 
+import java.util.Arrays;
 import java.util.Random;
 
 /**
@@ -10,9 +11,12 @@ public class TspSampledDataWithDepot implements TspData {
 	// Reference to full data set
 	private final TspDataSet data;
 	// Number of cities in sample
-	private final int numberOfCities;
+	private int numberOfCities;
 	// Array storing the real city id (in full data set) of ith sample city
 	private final int[] idInFullData;
+	// Array storing the sample index of each city of the full data set. Entries are only meaningful for sampled
+	// cities, which is checked against idInFullData (so that the array never has to be cleared).
+	private final int[] sampleIndexOf;
 
 	/**
 	 * Creates an instance of a tsp by selecting randomly a subset of.
@@ -23,6 +27,33 @@ public class TspSampledDataWithDepot implements TspData {
 	 * @param rnd random source to be used to create the sample
 	 */
 	public TspSampledDataWithDepot(TspDataSet data, int depot, double samplingProb, Random rnd) {
+		this(data);
+		resample(depot, samplingProb, rnd);
+	}
+
+	/**
+	 * Creates an empty sample of data. The buffers needed to store any sample of data are allocated once,
+	 * so that the instance can be refilled by resample() without further allocation.
+	 *
+	 * @param data TspDataSet to sample cities from
+	 */
+	public TspSampledDataWithDepot(TspDataSet data) {
+		this.data = data;
+
+		// Dictionary between sample indices and full data set indices
+		idInFullData = new int[data.getNumberOfCities()];
+		sampleIndexOf = new int[data.getNumberOfCities()];
+		numberOfCities = 0;
+	}
+
+	/**
+	 * Replaces the current sample by a new random selection of the cities of the full data set.
+	 *
+	 * @param depot central depot city index (always in sample)
+	 * @param samplingProb probability of selection for each city in data (except depot)
+	 * @param rnd random source to be used to create the sample
+	 */
+	public void resample(int depot, double samplingProb, Random rnd) {
 		// Check for out of bounds start index
 		if (depot < 0 || depot >= data.getNumberOfCities()) {
 			throw new IndexOutOfBoundsException("Depot index out of bounds.");
@@ -33,22 +64,194 @@ public class TspSampledDataWithDepot implements TspData {
 			throw new IllegalArgumentException("Sampling probability should be between 0 and 1.");
 		}
 
-		this.data = data;
-
-		// Dictionary between sample indices and full data set indices
-		idInFullData = new int[data.getNumberOfCities()];
 		idInFullData[0] = depot;
+		sampleIndexOf[depot] = 0;
 		int sampleSize = 1;
 
 		// Each city (expect depot) is selected with probability samplingProb
 		for (int i = 0; i < data.getNumberOfCities(); ++i) {
 			if (i != depot && rnd.nextDouble() <= samplingProb) {
+				sampleIndexOf[i] = sampleSize;
+				idInFullData[sampleSize++] = i;
+			}
+		}
+		numberOfCities = sampleSize;
+	}
+
+	/**
+	 * Replaces the current sample by a new random selection of the cities of the full data set, each city i (except
+	 * depot) being selected independently with its own probability selectionProbs[i].
+	 *
+	 * @param depot          central depot city index (always in sample)
+	 * @param selectionProbs probability of selection of each city of data (entry of depot is ignored)
+	 * @param rnd            random source to be used to create the sample
+	 * @throws IllegalArgumentException if selectionProbs does not have one entry per city of data
+	 */
+	public void resample(int depot, double[] selectionProbs, Random rnd) {
+		// Check for out of bounds start index
+		if (depot < 0 || depot >= data.getNumberOfCities()) {
+			throw new IndexOutOfBoundsException("Depot index out of bounds.");
+		}
+		if (selectionProbs.length != data.getNumberOfCities()) {
+			throw new IllegalArgumentException("There should be one selection probability per city.");
+		}
+
+		idInFullData[0] = depot;
+		sampleIndexOf[depot] = 0;
+		int sampleSize = 1;
+
+		for (int i = 0; i < selectionProbs.length; ++i) {
+			if (i != depot && rnd.nextDouble() <= selectionProbs[i]) {
+				sampleIndexOf[i] = sampleSize;
 				idInFullData[sampleSize++] = i;
 			}
 		}
 		numberOfCities = sampleSize;
 	}
 
+	/**
+	 * Replaces the current sample by a new random selection of the cities of the full data set, each city (except
+	 * depot) being selected with probability samplingProb.
+	 * <p>
+	 * The sample has the same distribution as with resample(), but instead of drawing one random number per city of
+	 * the full data set, the gaps between selected cities are drawn from a geometric distribution, so that only one
+	 * random number is drawn per selected city. Much faster than resample() when samplingProb is small.
+	 *
+	 * @param depot central depot city index (always in sample)
+	 * @param samplingProb probability of selection for each city in data (except depot)
+	 * @param rnd random source to be used to create the sample
+	 */
+	public void resampleGeometric(int depot, double samplingProb, Random rnd) {
+		// Check for out of bounds start index
+		if (depot < 0 || depot >= data.getNumberOfCities()) {
+			throw new IndexOutOfBoundsException("Depot index out of bounds.");
+		}
+
+		// Check for invalid sampling probability
+		if (samplingProb < 0.0 || samplingProb > 1.0) {
+			throw new IllegalArgumentException("Sampling probability should be between 0 and 1.");
+		}
+
+		idInFullData[0] = depot;
+		sampleIndexOf[depot] = 0;
+		int sampleSize = 1;
+
+		// Candidates are the cities of data except depot, candidate c being city c (c < depot) or c + 1 (c >= depot)
+		int numberOfCandidates = data.getNumberOfCities() - 1;
+
+		if (samplingProb == 1.0) {
+			for (int c = 0; c < numberOfCandidates; ++c) {
+				int i = (c < depot) ? c : c + 1;
+				sampleIndexOf[i] = sampleSize;
+				idInFullData[sampleSize++] = i;
+			}
+		} else if (samplingProb > 0.0) {
+			// Number of rejected candidates before next selected one follows a geometric distribution
+			double logOfRejectionProb = Math.log1p(-samplingProb);
+			double c = -1;
+			while (true) {
+				c += 1 + Math.floor(Math.log(1.0 - rnd.nextDouble()) / logOfRejectionProb);
+				if (c >= numberOfCandidates) {
+					break;
+				}
+				int i = (c < depot) ? (int) c : (int) c + 1;
+				sampleIndexOf[i] = sampleSize;
+				idInFullData[sampleSize++] = i;
+			}
+		}
+		numberOfCities = sampleSize;
+	}
+
+	/**
+	 * Replaces the current sample by a new random selection of exactly numberOfSelectedCities cities of the full
+	 * data set (in addition to depot), every subset of that size being equally likely.
+	 * <p>
+	 * Uses Floyd's algorithm, which draws one random number per selected city. Sample cities are then sorted by
+	 * increasing index in the full data set, as with the other sampling methods.
+	 *
+	 * @param depot central depot city index (always in sample)
+	 * @param numberOfSelectedCities number of cities to be selected in addition to depot
+	 * @param rnd random source to be used to create the sample
+	 */
+	public void resampleFixedSize(int depot, int numberOfSelectedCities, Random rnd) {
+		// Check for out of bounds start index
+		if (depot < 0 || depot >= data.getNumberOfCities()) {
+			throw new IndexOutOfBoundsException("Depot index out of bounds.");
+		}
+
+		// Candidates are the cities of data except depot, candidate c being city c (c < depot) or c + 1 (c >= depot)
+		int numberOfCandidates = data.getNumberOfCities() - 1;
+
+		// Check for invalid sample size
+		if (numberOfSelectedCities < 0 || numberOfSelectedCities > numberOfCandidates) {
+			throw new IllegalArgumentException("Number of selected cities should be between 0 and the number of "
+					+ "cities of the data set minus one.");
+		}
+
+		idInFullData[0] = depot;
+		sampleIndexOf[depot] = 0;
+		numberOfCities = 1;
+
+		// Floyd's algorithm (numberOfCities is kept up to date so that getSampleIndexOf() tests membership)
+		for (int j = numberOfCandidates - numberOfSelectedCities; j < numberOfCandidates; ++j) {
+			int t = rnd.nextInt(j + 1);
+			int i = (t < depot) ? t : t + 1;
+			if (getSampleIndexOf(i) >= 0) {
+				i = (j < depot) ? j : j + 1;
+			}
+			sampleIndexOf[i] = numberOfCities;
+			idInFullData[numberOfCities++] = i;
+		}
+
+		Arrays.sort(idInFullData, 1, numberOfCities);
+		for (int k = 1; k < numberOfCities; ++k) {
+			sampleIndexOf[idInFullData[k]] = k;
+		}
+	}
+
+	/**
+	 * Adds a city of the full data set to this sample, with the next sample index (getNumberOfCities() before the
+	 * call). See TspTour.insertCity to update a tour of this sample.
+	 *
+	 * @param id City index in the full data set
+	 * @return Sample index of the added city
+	 * @throws IndexOutOfBoundsException If id is out of bounds.
+	 * @throws IllegalArgumentException If the city is already in the sample
+	 */
+	public int addCity(int id) {
+		if (getSampleIndexOf(id) >= 0) {
+			throw new IllegalArgumentException("City should not be in the sample already.");
+		}
+
+		sampleIndexOf[id] = numberOfCities;
+		idInFullData[numberOfCities] = id;
+		return numberOfCities++;
+	}
+
+	/**
+	 * Removes a city from this sample. The city with the last sample index takes the sample index of the removed one,
+	 * the other cities keep theirs. See TspTour.removeCity to update a tour of this sample.
+	 *
+	 * @param i Sample index of the city to be removed
+	 * @throws IndexOutOfBoundsException If i is out of bounds.
+	 * @throws IllegalArgumentException If i is the depot (sample index 0)
+	 */
+	public void removeCity(int i) {
+		// Check for out of bounds index
+		if (i < 0 || i >= numberOfCities) {
+			throw new IndexOutOfBoundsException("City index out of bounds.");
+		}
+		if (i == 0) {
+			throw new IllegalArgumentException("Depot should not be removed from the sample.");
+		}
+
+		int last = --numberOfCities;
+		if (i != last) {
+			idInFullData[i] = idInFullData[last];
+			sampleIndexOf[idInFullData[i]] = i;
+		}
+	}
+
 	/**
 	 * Returns the distance between two cities.
 	 *
@@ -110,4 +313,56 @@ public class TspSampledDataWithDepot implements TspData {
 		return data.getYCoordinateForCity(idInFullData[i]);
 
 	}
+
+	/**
+	 * Returns the index in the full data set of a sample city.
+	 *
+	 * @param i Sample city index
+	 * @return Index of the city in the full data set
+	 * @throws IndexOutOfBoundsException If i is out of bounds.
+	 */
+	public int getIdInFullData(int i) {
+		// Check for out of bounds index
+		if (i < 0 || i >= numberOfCities) {
+			throw new IndexOutOfBoundsException("City index out of bounds.");
+		}
+
+		return idInFullData[i];
+	}
+
+	/**
+	 * Returns the full data set this sample is drawn from.
+	 *
+	 * @return Full data set
+	 */
+	TspDataSet getFullData() {
+		return data;
+	}
+
+	/**
+	 * Returns the array of the indices in the full data set of the sample cities (only the first getNumberOfCities()
+	 * entries are meaningful). The returned array must not be modified.
+	 *
+	 * @return Indices in the full data set
+	 */
+	int[] getIdsInFullData() {
+		return idInFullData;
+	}
+
+	/**
+	 * Returns the sample index of a city of the full data set.
+	 *
+	 * @param id City index in the full data set
+	 * @return Sample index of the city or -1 if the city is not in the sample
+	 * @throws IndexOutOfBoundsException If id is out of bounds.
+	 */
+	public int getSampleIndexOf(int id) {
+		// Check for out of bounds index
+		if (id < 0 || id >= sampleIndexOf.length) {
+			throw new IndexOutOfBoundsException("City index out of bounds.");
+		}
+
+		int i = sampleIndexOf[id];
+		return (i < numberOfCities && idInFullData[i] == id) ? i : -1;
+	}
 }
@@ -0,0 +1,177 @@
+package tsp;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of tour lengths computed for samples of a TspDataSet, keyed by the subset of selected cities.
+ * <p>
+ * When the same subset of cities is drawn again (frequent for small data sets or for sampling probabilities close to
+ * 0 or 1), its tour length can be returned without solving the sample again. When the cache is full, the least
+ * recently used entry is evicted.
+ * <p>
+ * The cache is thread safe and may be shared by parallel workers, as long as all of them solve samples of the same
+ * data set with the same heuristics (cached values are not checked against the way they were computed).
+ */
+public class TspSolveCache {
+
+	// Maximal number of entries
+	private final int capacity;
+	// Tour length of each cached subset, in access order
+	private final LinkedHashMap<SubsetKey, Long> entries;
+	// Statistics
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * Creates a new empty cache.
+	 *
+	 * @param capacity maximal number of cached subsets
+	 * @throws IllegalArgumentException if capacity is not positive
+	 */
+	public TspSolveCache(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Cache capacity should be positive.");
+		}
+		this.capacity = capacity;
+		this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<SubsetKey, Long> eldest) {
+				if (size() > TspSolveCache.this.capacity) {
+					++evictions;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cached tour length of a subset and records a hit or a miss.
+	 *
+	 * @param key subset of selected cities
+	 * @return cached tour length or -1 if subset is not in the cache
+	 */
+	synchronized long get(SubsetKey key) {
+		Long length = entries.get(key);
+		if (length == null) {
+			++misses;
+			return -1;
+		}
+		++hits;
+		return length;
+	}
+
+	/**
+	 * Stores the tour length of a subset. The key is copied, so the caller may reuse it.
+	 *
+	 * @param key    subset of selected cities
+	 * @param length tour length computed for this subset
+	 */
+	synchronized void put(SubsetKey key, long length) {
+		entries.put(key.copy(), length);
+	}
+
+	/**
+	 * Returns the number of lookups that found their subset in the cache.
+	 *
+	 * @return number of hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups that did not find their subset in the cache.
+	 *
+	 * @return number of misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the proportion of lookups that found their subset in the cache.
+	 * <p>
+	 * If no lookup was done, Double.NaN is returned.
+	 *
+	 * @return hit rate of the cache
+	 */
+	public synchronized double getHitRate() {
+		return (hits + misses == 0) ? Double.NaN : (double) hits / (hits + misses);
+	}
+
+	/**
+	 * Returns the number of entries evicted because the cache was full.
+	 *
+	 * @return number of evictions
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Returns the number of cached subsets.
+	 *
+	 * @return number of entries
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Removes all entries and resets statistics.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		hits = misses = evictions = 0;
+	}
+
+	/**
+	 * Bitmap of the cities of a TspDataSet selected in a sample. A key can be refilled from one sample to the other
+	 * without allocation.
+	 */
+	static final class SubsetKey {
+		private final long[] bits;
+		private int hash;
+
+		SubsetKey(int numberOfCities) {
+			bits = new long[(numberOfCities + 63) >>> 6];
+		}
+
+		private SubsetKey(long[] bits, int hash) {
+			this.bits = bits;
+			this.hash = hash;
+		}
+
+		/**
+		 * Sets this key to the subset of cities selected in sample.
+		 *
+		 * @param sample sample of the data set this key was created for
+		 */
+		void set(TspSampledDataWithDepot sample) {
+			Arrays.fill(bits, 0L);
+			for (int i = 0; i < sample.getNumberOfCities(); ++i) {
+				int id = sample.getIdInFullData(i);
+				bits[id >>> 6] |= 1L << id;
+			}
+			hash = Arrays.hashCode(bits);
+		}
+
+		SubsetKey copy() {
+			return new SubsetKey(bits.clone(), hash);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof SubsetKey && ((SubsetKey) o).hash == hash && Arrays.equals(((SubsetKey) o).bits, bits);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package tsp;
+
+import statistics.WeightedStatCollector;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Importance sampling estimation of the probability that the tour length of a TspExperiment exceeds a threshold.
+ * <p>
+ * When this probability is small, plain simulation needs an enormous number of runs to observe the event at all.
+ * Here, samples are drawn with tilted selection probabilities (TILTED sampling of TspExperiment), making long tours
+ * frequent, and each indicator of the event is weighted by the likelihood ratio of its sample. The tilt can be tuned
+ * automatically with the cross-entropy method (see tune).
+ */
+public class TspTailProbability {
+
+	// Selection probabilities are kept in [MIN_PROB, 1 - MIN_PROB], so that likelihood ratios remain bounded
+	private static final double MIN_PROB = 1e-3;
+
+	private final TspExperiment experiment;
+	private final double threshold;
+
+	/**
+	 * Creates an estimator of P(tour length &gt; threshold). The sampling of experiment is set to TILTED (with its
+	 * current tilted selection probabilities, samplingProb for every city by default).
+	 *
+	 * @param experiment experiment whose tour length is considered
+	 * @param threshold  threshold of the tour length
+	 */
+	public TspTailProbability(TspExperiment experiment, double threshold) {
+		this.experiment = experiment;
+		this.threshold = threshold;
+		experiment.setSampling(TspExperiment.Sampling.TILTED);
+	}
+
+	/**
+	 * Tunes the tilted selection probabilities of the experiment with the cross-entropy method, all cities (except
+	 * depot) sharing the same probability. See tune(int[], int, double, double, int, Random).
+	 *
+	 * @param runsPerIteration number of samples drawn per iteration
+	 * @param rarity           proportion of the samples used to update the probabilities (typically 0.1)
+	 * @param smoothing        weight of the new estimate of the probabilities (between 0 and 1, typically 0.7)
+	 * @param maxIterations    maximal number of iterations
+	 * @param rnd              random source to be used to simulate the experiment
+	 * @return number of iterations done
+	 */
+	public int tune(int runsPerIteration, double rarity, double smoothing, int maxIterations, Random rnd) {
+		return tune(new int[experiment.getTiltedSelectionProbabilities().length], 1,
+				runsPerIteration, rarity, smoothing, maxIterations, rnd);
+	}
+
+	/**
+	 * Tunes the tilted selection probabilities of the experiment with the cross-entropy method, the cities of a same
+	 * group sharing the same probability.
+	 * <p>
+	 * At each iteration, runsPerIteration samples are drawn with the current probabilities; the level is the (1 -
+	 * rarity) quantile of their tour lengths, or the threshold if lower. The new probability of each group is the
+	 * weighted proportion of its cities selected in the samples reaching the level (weights being likelihood ratios),
+	 * mixed with the current probability (new = smoothing * estimate + (1 - smoothing) * current). Iterations stop
+	 * once the level reaches the threshold.
+	 * <p>
+	 * The level may stall below the threshold, the tilt estimated for a level only making this level more frequent.
+	 * Whenever the level does not increase, rarity is halved (down to 10 samples per iteration), as in the modified
+	 * cross-entropy method of Homem-de-Mello and Rubinstein.
+	 * <p>
+	 * The fewer the groups, the more reliable the estimates of their probabilities: with one group per city, a few
+	 * hundred samples are far from enough and likelihood ratios degenerate.
+	 *
+	 * @param groupOfCity      group of each city of the data set (between 0 and numberOfGroups - 1, the entry of the
+	 *                         depot being ignored)
+	 * @param numberOfGroups   number of groups
+	 * @param runsPerIteration number of samples drawn per iteration
+	 * @param rarity           proportion of the samples used to update the probabilities (typically 0.1)
+	 * @param smoothing        weight of the new estimate of the probabilities (between 0 and 1, typically 0.7)
+	 * @param maxIterations    maximal number of iterations
+	 * @param rnd              random source to be used to simulate the experiment
+	 * @return number of iterations done
+	 * @throws IllegalArgumentException if rarity or smoothing is not between 0 and 1, if runsPerIteration is not
+	 *                                  positive or if groupOfCity does not have one entry per city
+	 */
+	public int tune(int[] groupOfCity, int numberOfGroups, int runsPerIteration, double rarity, double smoothing,
+					int maxIterations, Random rnd) {
+		if (runsPerIteration <= 0 || rarity <= 0.0 || rarity > 1.0 || smoothing <= 0.0 || smoothing > 1.0) {
+			throw new IllegalArgumentException(
+					"Number of runs should be positive, rarity and smoothing between 0 (excluded) and 1.");
+		}
+		double[] probs = experiment.getTiltedSelectionProbabilities();
+		if (groupOfCity.length != probs.length) {
+			throw new IllegalArgumentException("There should be one group per city.");
+		}
+		int depot = experiment.getDepot();
+
+		// Size and current probability of each group (probabilities of its cities are assumed equal)
+		int[] groupSize = new int[numberOfGroups];
+		double[] groupProbs = new double[numberOfGroups];
+		for (int i = 0; i < probs.length; i++) {
+			if (i != depot) {
+				groupSize[groupOfCity[i]]++;
+				groupProbs[groupOfCity[i]] = probs[i];
+			}
+		}
+
+		double[] results = new double[experiment.getNumberOfMetrics()];
+		double[] lengths = new double[runsPerIteration];
+		double[] weights = new double[runsPerIteration];
+		int[][] selectedPerGroup = new int[runsPerIteration][numberOfGroups];
+		double[] sortedLengths = new double[runsPerIteration];
+		double[] weightedSelections = new double[numberOfGroups];
+
+		double minRarity = Math.min(rarity, 10.0 / runsPerIteration);
+		int iteration = 0;
+		double level = Double.NEGATIVE_INFINITY;
+		while (iteration < maxIterations && level < threshold) {
+			++iteration;
+			double previousLevel = level;
+			for (int r = 0; r < runsPerIteration; r++) {
+				experiment.execute(rnd, results);
+				lengths[r] = results[TspExperiment.TOUR_LENGTH];
+				weights[r] = results[TspExperiment.LIKELIHOOD_RATIO];
+				TspSampledDataWithDepot sample = experiment.getLastSample();
+				int[] ids = sample.getIdsInFullData();
+				Arrays.fill(selectedPerGroup[r], 0);
+				for (int k = 1; k < sample.getNumberOfCities(); k++) {
+					selectedPerGroup[r][groupOfCity[ids[k]]]++;
+				}
+			}
+
+			// Level reached by the rarity proportion of the samples
+			System.arraycopy(lengths, 0, sortedLengths, 0, runsPerIteration);
+			Arrays.sort(sortedLengths);
+			int quantileIndex = Math.min(runsPerIteration - 1, (int) Math.ceil((1.0 - rarity) * runsPerIteration));
+			level = Math.min(threshold, sortedLengths[quantileIndex]);
+			if (level <= previousLevel) {
+				rarity = Math.max(minRarity, rarity / 2.0);
+				quantileIndex = Math.min(runsPerIteration - 1, (int) Math.ceil((1.0 - rarity) * runsPerIteration));
+				level = Math.min(threshold, sortedLengths[quantileIndex]);
+			}
+
+			// Weighted selection proportions among the samples reaching the level
+			Arrays.fill(weightedSelections, 0.0);
+			double sumOfWeights = 0.0;
+			for (int r = 0; r < runsPerIteration; r++) {
+				if (lengths[r] >= level) {
+					sumOfWeights += weights[r];
+					for (int g = 0; g < numberOfGroups; g++) {
+						weightedSelections[g] += weights[r] * selectedPerGroup[r][g];
+					}
+				}
+			}
+			if (!(sumOfWeights > 0.0)) {
+				break;
+			}
+			for (int g = 0; g < numberOfGroups; g++) {
+				if (groupSize[g] > 0) {
+					double estimate = weightedSelections[g] / (sumOfWeights * groupSize[g]);
+					double prob = smoothing * estimate + (1.0 - smoothing) * groupProbs[g];
+					groupProbs[g] = Math.min(1.0 - MIN_PROB, Math.max(MIN_PROB, prob));
+				}
+			}
+			for (int i = 0; i < probs.length; i++) {
+				probs[i] = i == depot ? 1.0 - MIN_PROB : groupProbs[groupOfCity[i]];
+			}
+			experiment.setTiltedSelectionProbabilities(probs);
+		}
+		return iteration;
+	}
+
+	/**
+	 * Simulates the experiment n times with the current tilted selection probabilities and collects in stat the
+	 * indicators of the event (tour length &gt; threshold) weighted by the likelihood ratios of the samples. The
+	 * average of stat estimates the probability of the event without the tilt.
+	 *
+	 * @param n    number of runs to be performed
+	 * @param rnd  random source to be used to simulate the experiment
+	 * @param stat collector of the weighted indicators
+	 */
+	public void estimate(long n, Random rnd, WeightedStatCollector stat) {
+		double[] results = new double[experiment.getNumberOfMetrics()];
+		for (long run = 0; run < n; ++run) {
+			experiment.execute(rnd, results);
+			stat.add(results[TspExperiment.TOUR_LENGTH] > threshold ? 1.0 : 0.0, results[TspExperiment.LIKELIHOOD_RATIO]);
+		}
+	}
+
+	/**
+	 * Returns the threshold of the tour length.
+	 *
+	 * @return threshold
+	 */
+	public double getThreshold() {
+		return threshold;
+	}
+}
@@ -1,6 +1,9 @@
 package tsp;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Class representing a solution for an instance of the TSP.
@@ -9,27 +12,99 @@ import java.util.*;
  */
 public class TspTour {
 
+	/**
+	 * Default number of cities from which 2-opt scans are split across the common fork-join pool.
+	 */
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 5000;
+
+	/**
+	 * Default number of nearest neighbors examined by insertCity, removeCity and their local 2-opt repair.
+	 */
+	public static final int DEFAULT_NUMBER_OF_NEIGHBORS = 8;
+
 	// Reference to problem instance
 	private final TspData data;
 	// Array storing the permutation of city indices defining current solution
+	// (only the first numberOfCities entries are used)
 	private int[] tour;
+	// Number of cities in current solution
+	private int numberOfCities;
 	// Length of current tour
 	private long tourLength;
+	// Visited status of the cities, reused by the construction heuristics
+	private boolean[] visited;
+	// Best exchange found by the last 2-opt scan, reused from one scan to the other
+	private final long[] bestExchange = new long[3];
+	// Number of exchanges done by the last call to applyTwoOptBest
+	private long numberOfTwoOptMoves;
+	// Number of cities from which 2-opt scans are parallel
+	private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+	// Best exchange found by each part of a parallel 2-opt scan (allocated on first parallel scan)
+	private long[][] partialExchanges;
+	// Whether 2-opt scans read the distance matrix of the full data set directly, when it is stored
+	private boolean flatMatrixScan = true;
+	// State of the current scan on the distance matrix of the full data set: matrix (null if distances are read
+	// through data), its number of columns, and tour with full data set indices (followed by its first city)
+	private int[] scanMatrix;
+	private int scanStride;
+	private int[] scanTour;
+	// State of the xorshift generator breaking ties between nearest cities at random (0 for the smallest index)
+	private long tieBreakState;
+	// Number of nearest neighbors examined by the incremental operations
+	private int numberOfNeighbors = DEFAULT_NUMBER_OF_NEIGHBORS;
+	// Buffers of the incremental operations (allocated on first use): position of each city in tour (only valid if
+	// positionsValid), cities whose neighborhood is to be repaired (a stack, with membership flags) and candidates
+	private int[] positionOf;
+	private boolean positionsValid;
+	private int[] repairStack;
+	private int repairStackSize;
+	private boolean[] toRepair;
+	private int[] candidates;
 
 
 	public TspTour(TspData data) {
+		this(data, data.getNumberOfCities());
+	}
+
+	/**
+	 * Creates a tour whose buffers can hold up to capacity cities without being reallocated. Useful when data is a
+	 * view whose number of cities changes over time (see reset()).
+	 *
+	 * @param data     Problem instance
+	 * @param capacity Initial capacity of the tour buffers
+	 */
+	public TspTour(TspData data, int capacity) {
 		this.data = data;
-		tour = new int[data.getNumberOfCities()];
-		createCanonicalTour();
+		tour = new int[capacity];
+		visited = new boolean[capacity];
+		reset();
+	}
+
+	/**
+	 * Adapts this tour to the current number of cities of its problem instance and creates the canonical tour.
+	 * Buffers are only reallocated if the number of cities exceeds their capacity.
+	 */
+	public void reset() {
+		numberOfCities = data.getNumberOfCities();
+		if (numberOfCities > tour.length) {
+			tour = new int[numberOfCities];
+			visited = new boolean[numberOfCities];
+		}
+		if (numberOfCities > 0) {
+			createCanonicalTour();
+		} else {
+			tourLength = 0;
+		}
 	}
 
 	/**
 	 * Creates a solution visiting cities in increasing order of their indices.
 	 */
 	public void createCanonicalTour() {
-		tourLength = data.getDistance(data.getNumberOfCities() - 1, 0);
+		positionsValid = false;
+		tourLength = data.getDistance(numberOfCities - 1, 0);
 		tour[0] = 0;
-		for (int i = 1; i < data.getNumberOfCities(); i++) {
+		for (int i = 1; i < numberOfCities; i++) {
 			tour[i] = i;
 			tourLength += data.getDistance(i - 1, i);
 		}
@@ -41,10 +116,11 @@ public class TspTour {
 	 * @param seed Seed used to initialize the random generator
 	 */
 	public void createRandomTour(long seed) {
+		positionsValid = false;
 		Random rnd = new Random(seed);
 		int j;
 
-		for (int i = data.getNumberOfCities() - 1; i > 0; --i) {
+		for (int i = numberOfCities - 1; i > 0; --i) {
 			j = rnd.nextInt(i + 1);
 			swapInTour(i, j);
 		}
@@ -67,8 +143,8 @@ public class TspTour {
 	 * Recompute length of the current tour.
 	 */
 	public void recomputeTourLength() {
-		tourLength = data.getDistance(tour[0], tour[tour.length - 1]);
-		for (int i = 0; i < tour.length - 1; ++i) {
+		tourLength = data.getDistance(tour[0], tour[numberOfCities - 1]);
+		for (int i = 0; i < numberOfCities - 1; ++i) {
 			tourLength += data.getDistance(tour[i], tour[i + 1]);
 		}
 	}
@@ -92,7 +168,7 @@ public class TspTour {
 	 */
 	public int getCityAtPosition(int pos) {
 		// Check for out of bounds position
-		if (pos < 1 || pos > tour.length) {
+		if (pos < 1 || pos > numberOfCities) {
 			throw new IndexOutOfBoundsException("Position out of bounds.");
 		}
 
@@ -105,7 +181,7 @@ public class TspTour {
 	 * @return String representation of the current tour
 	 */
 	public String toString() {
-		return Arrays.toString(tour);
+		return Arrays.toString(Arrays.copyOf(tour, numberOfCities));
 	}
 
 
@@ -126,19 +202,24 @@ public class TspTour {
 	 * @throws IndexOutOfBoundsException If parameter is not a valid city index
 	 */
 	public void CreateNearestNeighborFromBothEndsTourSolution(int start) {
-		// TODO corriger
 		// Check for out of bounds start index
-		if (start < 0 || start >= tour.length) {
+		if (start < 0 || start >= numberOfCities) {
 			throw new IndexOutOfBoundsException("Starting city index out of bounds.");
 		}
 
-		// Create array of visited status for the cities
-		boolean visited[] 	= new boolean[data.getNumberOfCities()];
+		positionsValid = false;
+		// Reset visited status of the cities
+		Arrays.fill(visited, 0, numberOfCities, false);
 		visited[start] 		= true;
 
 		tour[0] 	= start;
 		tourLength 	= 0;
 
+		// A single city tour has no edge (happens for samples reduced to the depot)
+		if (numberOfCities == 1) {
+			return;
+		}
+
 		boolean
 				choseT = false,
 				choseS = false;
@@ -149,23 +230,23 @@ public class TspTour {
 				sIndex = 0,
 				tIndex = 0;
 
-		int nearestToS = nearestCityTo(cityS, visited);
-		int nearestToT = nearestCityTo(cityT, visited);
+		int nearestToS = nearestCityTo(cityS);
+		int nearestToT = nearestCityTo(cityT);
 
 		int distFromT = data.getDistance(cityT, nearestToT);
 		int distFromS = data.getDistance(cityS, nearestToS);
 
 		// While the number of unvisited cities is >= 1...
-		while (numberOfUnvisitedCities(visited) >= 1) {
+		while (numberOfUnvisitedCities() >= 1) {
 			// Determine the nearest unvisited city to s or t
-			if(choseT) {
-				// If city T was changed
-				nearestToT = nearestCityTo(cityT, visited);
+			if(choseT || visited[nearestToT]) {
+				// If city T was changed, or if its nearest city was just taken by S
+				nearestToT = nearestCityTo(cityT);
 				distFromT = data.getDistance(cityT, nearestToT);
 			}
-			if(choseS) {
-				// If city S was changed
-				nearestToS = nearestCityTo(cityS, visited);
+			if(choseS || visited[nearestToS]) {
+				// If city S was changed, or if its nearest city was just taken by T
+				nearestToS = nearestCityTo(cityS);
 				distFromS = data.getDistance(cityS, nearestToS);
 			}
 
@@ -174,7 +255,7 @@ public class TspTour {
 			// If both distances are equal, we chose the smallest city (int value)
 			if (distFromS > distFromT) {
 				// Add the next city next to t
-				tour[data.getNumberOfCities() - ++tIndex] = nearestToT;
+				tour[numberOfCities - ++tIndex] = nearestToT;
 				tourLength += distFromT;
 				// Remove the city next to t form the list of unvisited cities
 				visited[nearestToT] = true;
@@ -197,15 +278,32 @@ public class TspTour {
 		tourLength += data.getDistance(cityS, cityT);
 	}
 
+	/**
+	 * Same as CreateNearestNeighborFromBothEndsTourSolution(int), but ties between nearest cities are broken at
+	 * random rather than in favor of the smallest index, so that different seeds may give different tours from the
+	 * same start.
+	 *
+	 * @param start        Index of starting city
+	 * @param tieBreakSeed Seed of the tie breaking (0 breaks ties in favor of the smallest index)
+	 * @throws IndexOutOfBoundsException If parameter is not a valid city index
+	 */
+	public void CreateNearestNeighborFromBothEndsTourSolution(int start, long tieBreakSeed) {
+		tieBreakState = tieBreakSeed;
+		try {
+			CreateNearestNeighborFromBothEndsTourSolution(start);
+		} finally {
+			tieBreakState = 0;
+		}
+	}
+
 	/**
 	 * Used to get the numbers of cities yet to be added to the tour
-	 * @param visited (boolean[]) status of each city
 	 * @return counter (int) the number of unvisited cities
 	 */
-	private int numberOfUnvisitedCities(boolean[] visited) {
+	private int numberOfUnvisitedCities() {
 		int counter = 0;
-		for (boolean v: visited) {
-			if(!v)
+		for (int i = 0; i < numberOfCities; ++i) {
+			if(!visited[i])
 				++counter;
 		}
 		return counter;
@@ -214,32 +312,75 @@ public class TspTour {
 	/**
 	 * Finds the nearest city to the givent city
 	 * @param city (int) the cityto which we have to find the nearest neighbor
-	 * @param visited (boolean[]) list of status of cities
 	 * @return nearestCity (int) the nearest city to the given city or -1 if nothing was found
 	 */
-	private int nearestCityTo(int city, boolean[] visited) {
+	private int nearestCityTo(int city) {
 		long distMin = Long.MAX_VALUE;
 		int nearestCity = -1;
+		// Number of nearest cities met so far, each one being kept with probability 1 / ties
+		int ties = 0;
 
-		for (int i = 0; i < data.getNumberOfCities(); ++i) {
+		for (int i = 0; i < numberOfCities; ++i) {
 			int dist = data.getDistance(city, i);
 
 			if (dist < distMin && !visited[i]){
 				nearestCity = i;
 				distMin = dist;
+				ties = 1;
+			} else if (dist == distMin && tieBreakState != 0 && !visited[i] && nextTieBreak(++ties) == 0) {
+				nearestCity = i;
 			}
 		}
 
 		return nearestCity;
 	}
 
+	/**
+	 * Advances the tie breaking generator (xorshift64) and returns a number uniformly drawn in [0, bound[.
+	 */
+	private int nextTieBreak(int bound) {
+		long x = tieBreakState;
+		x ^= x << 13;
+		x ^= x >>> 7;
+		x ^= x << 17;
+		tieBreakState = x;
+		return (int) Long.remainderUnsigned(x, bound);
+	}
+
 	/**
 	 * Applies the twoOptBest algorithm on the current tour
 	 */
 	public void applyTwoOptBest() {
+		applyTwoOptBest(Long.MAX_VALUE);
+	}
+
+	/**
+	 * Applies the twoOptBest algorithm on the current tour, stopping after at most maxMoves exchanges.
+	 *
+	 * @param maxMoves Maximal number of exchanges
+	 */
+	public void applyTwoOptBest(long maxMoves) {
+		applyTwoOptBest(maxMoves, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Applies the twoOptBest algorithm on the current tour, stopping after at most maxMoves exchanges or once
+	 * timeBudgetNanos nanoseconds have elapsed (checked after each exchange, so that the budget may be exceeded by
+	 * the duration of one scan of the exchanges).
+	 *
+	 * @param maxMoves        Maximal number of exchanges
+	 * @param timeBudgetNanos Maximal duration in nanoseconds (Long.MAX_VALUE for no time limit)
+	 */
+	public void applyTwoOptBest(long maxMoves, long timeBudgetNanos) {
 		long[] exchange;
 		long improvement;
 		boolean improvable;
+		numberOfTwoOptMoves = 0;
+		if (maxMoves <= 0) {
+			return;
+		}
+		boolean timed = timeBudgetNanos != Long.MAX_VALUE;
+		long start = timed ? System.nanoTime() : 0;
 
 		// While the are improvements to be made...
 		do {
@@ -256,36 +397,73 @@ public class TspTour {
 				doExchange(exchange);
 				// The improvement is reflected on the tour length
 				tourLength -= improvement;
+				++numberOfTwoOptMoves;
 			}
-		} while (improvable);
+		} while (improvable && numberOfTwoOptMoves < maxMoves
+				&& !(timed && System.nanoTime() - start >= timeBudgetNanos));
+	}
+
+	/**
+	 * Returns the number of exchanges done by the last call to applyTwoOptBest.
+	 *
+	 * @return number of 2-opt moves
+	 */
+	public long getNumberOfTwoOptMoves() {
+		return numberOfTwoOptMoves;
 	}
 
 	/**
 	 * Finds the best exchange that can be done between two cities in the current tour
-	 * The returned exchange either shortens the current tour length or [-1, -1]
-	 * @return exchange (int[2])
+	 * The returned exchange either shortens the current tour length or [-1, -1, -1]
+	 * The returned array is reused by the next call.
+	 * @return exchange (long[3])
 	 */
 	private long[] findBestExchange() {
-		long[] exchange = {-1, -1, -1};
+		long[] exchange = bestExchange;
+		int n = numberOfCities;
+		prepareMatrixScan();
+		if (n < parallelThreshold || ForkJoinPool.getCommonPoolParallelism() < 2) {
+			scanExchanges(0, n - 3, exchange);
+		} else {
+			findBestExchangeInParallel(exchange);
+		}
+		return exchange;
+	}
+
+	/**
+	 * Finds the best exchange (i, j) for i in [iFrom, iTo[, keeping the first one found in case of ties (smallest i,
+	 * then smallest j). The result is written in exchange, [-1, -1, -1] if no exchange shortens the tour.
+	 *
+	 * @param iFrom    First position i of the scanned exchanges
+	 * @param iTo      Last position i (excluded) of the scanned exchanges
+	 * @param exchange Array receiving the best exchange
+	 */
+	private void scanExchanges(int iFrom, int iTo, long[] exchange) {
+		if (scanMatrix != null) {
+			scanExchangesInMatrix(iFrom, iTo, exchange);
+			return;
+		}
+		exchange[0] = exchange[1] = exchange[2] = -1;
 		long best = 0;
+		int n = numberOfCities;
 
 		// Go through the tour with i and j
 		// i < j at all times
-		for (int i = 0; i < tour.length - 3; ++i) {
-			for (int j = i + 2; j < tour.length; ++j) {
-				if(i == 0 && j == tour.length - 1){
+		for (int i = iFrom; i < iTo; ++i) {
+			for (int j = i + 2; j < n; ++j) {
+				if(i == 0 && j == n - 1){
 					break;
 				}
 
 				// Calculate the sum distance of the old ridges
 				long oldDistance =
 						data.getDistance(tour[i], tour[i + 1]) +
-								data.getDistance(tour[j], tour[(j + 1) % tour.length]);
+								data.getDistance(tour[j], tour[(j + 1) % n]);
 
 				// Calculate the sum distance of the new ridges
 				long newDistance =
 						data.getDistance(tour[i], 					tour[j]) +
-								data.getDistance(tour[(i+1) % tour.length], tour[(j+1) % tour.length]);
+								data.getDistance(tour[(i+1) % n], tour[(j+1) % n]);
 
 				// The improvement depends on the difference between the old and the new
 				long newImprovement = oldDistance - newDistance;
@@ -294,27 +472,483 @@ public class TspTour {
 				if(newImprovement > best) {
 					// We store the current improvement as the best yet
 					best = newImprovement;
-					exchange = new long[]{i, j, best};
+					exchange[0] = i;
+					exchange[1] = j;
+					exchange[2] = best;
 				}
 			}
 		}
+	}
 
-		return exchange;
+	/**
+	 * Looks for the distance matrix of the full data set and, if it is stored, translates the tour into full data
+	 * set indices, so that the scan reads distances without going through data.
+	 */
+	private void prepareMatrixScan() {
+		scanMatrix = null;
+		if (!flatMatrixScan) {
+			return;
+		}
+		TspDataSet fullData;
+		int[] ids;
+		if (data instanceof TspSampledDataWithDepot) {
+			fullData = ((TspSampledDataWithDepot) data).getFullData();
+			ids = ((TspSampledDataWithDepot) data).getIdsInFullData();
+		} else if (data instanceof TspDataSet) {
+			fullData = (TspDataSet) data;
+			ids = null;
+		} else {
+			return;
+		}
+		if (fullData.getDistanceMatrix() == null) {
+			return;
+		}
+
+		int n = numberOfCities;
+		if (scanTour == null || scanTour.length < n + 1) {
+			scanTour = new int[tour.length + 1];
+		}
+		for (int k = 0; k < n; ++k) {
+			scanTour[k] = ids == null ? tour[k] : ids[tour[k]];
+		}
+		scanTour[n] = scanTour[0];
+		scanStride = fullData.getNumberOfCities();
+		scanMatrix = fullData.getDistanceMatrix();
+	}
+
+	/**
+	 * Same as the generic scan, reading the distance matrix of the full data set directly. Exchanges are visited in
+	 * the same order, so the same exchange is found.
+	 */
+	private void scanExchangesInMatrix(int iFrom, int iTo, long[] exchange) {
+		exchange[0] = exchange[1] = exchange[2] = -1;
+		long best = 0;
+		int n = numberOfCities;
+		int[] d = scanMatrix;
+		int[] t = scanTour;
+		int stride = scanStride;
+
+		for (int i = iFrom; i < iTo; ++i) {
+			// Edge (a, b) is the same for all j: its rows are read once
+			int rowA = t[i] * stride;
+			int rowB = t[i + 1] * stride;
+			long oldAB = d[rowA + t[i + 1]];
+			// Exchanging the first and the last edges would leave the tour unchanged
+			int jEnd = i == 0 ? n - 1 : n;
+			for (int j = i + 2; j < jEnd; ++j) {
+				int c = t[j];
+				int e = t[j + 1];
+				long newImprovement = oldAB + d[c * stride + e] - d[rowA + c] - d[rowB + e];
+				if (newImprovement > best) {
+					best = newImprovement;
+					exchange[0] = i;
+					exchange[1] = j;
+					exchange[2] = best;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Same as the sequential scan, but the positions i are split in ranges of similar work scanned by the common
+	 * fork-join pool. Ranges are reduced in order, keeping the first best exchange, so the result is exactly the one
+	 * of the sequential scan.
+	 *
+	 * @param exchange Array receiving the best exchange
+	 */
+	private void findBestExchangeInParallel(long[] exchange) {
+		int n = numberOfCities;
+		int parts = 4 * ForkJoinPool.getCommonPoolParallelism();
+		if (partialExchanges == null || partialExchanges.length != parts) {
+			partialExchanges = new long[parts][3];
+		}
+
+		// Row i holds about n - i exchanges: splits rows so that each part holds about total / parts exchanges
+		int lastRow = n - 3;
+		double total = (double) lastRow * (2.0 * n - lastRow + 1) / 2.0;
+		ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[parts];
+		int iFrom = 0;
+		double work = 0;
+		for (int p = 0; p < parts; ++p) {
+			int iTo = iFrom;
+			double target = total * (p + 1) / parts;
+			while (iTo < lastRow && (p == parts - 1 || work + (n - iTo) <= target)) {
+				work += n - iTo;
+				++iTo;
+			}
+			int from = iFrom, to = iTo;
+			long[] partial = partialExchanges[p];
+			tasks[p] = new RecursiveAction() {
+				@Override
+				protected void compute() {
+					scanExchanges(from, to, partial);
+				}
+			};
+			iFrom = iTo;
+		}
+		ForkJoinTask.invokeAll(tasks);
+
+		// Ties keep the exchange of the first part, i.e. the smallest i (and j)
+		exchange[0] = exchange[1] = exchange[2] = -1;
+		for (long[] partial : partialExchanges) {
+			if (partial[2] > Math.max(exchange[2], 0)) {
+				System.arraycopy(partial, 0, exchange, 0, 3);
+			}
+		}
+	}
+
+	/**
+	 * Sets whether 2-opt scans read the distance matrix of the full data set directly when it is stored (default),
+	 * rather than calling getDistance of the problem instance for each distance. Both choose the same exchanges.
+	 *
+	 * @param flatMatrixScan True to read the distance matrix directly
+	 */
+	public void setFlatMatrixScan(boolean flatMatrixScan) {
+		this.flatMatrixScan = flatMatrixScan;
+	}
+
+	/**
+	 * Sets the number of cities from which 2-opt scans are split across the common fork-join pool (see
+	 * DEFAULT_PARALLEL_THRESHOLD). Parallel and sequential scans choose the same exchanges. The problem instance must
+	 * support concurrent calls to getDistance.
+	 *
+	 * @param parallelThreshold Number of cities from which scans are parallel (Integer.MAX_VALUE to disable them)
+	 */
+	public void setParallelThreshold(int parallelThreshold) {
+		this.parallelThreshold = parallelThreshold;
 	}
 
 	public void doExchange(long[] exchange) {
 		// We get the i and j positions which define the exchange to be done
-		long i = exchange[0];
-		long j = exchange[1];
-		// Copy the current state of the tour
-		int[] oldTour = Arrays.copyOf(tour, tour.length);
-		int newJ = (int)j;
+		int i = (int)exchange[0];
+		int j = (int)exchange[1];
+
+		positionsValid = false;
+		// Reverse the section ]i, j] in tour, in place
+		for(int newI = i + 1, newJ = j; newI < newJ; ++newI, --newJ) {
+			swapInTour(newI, newJ);
+		}
+
+	}
+
+	/**
+	 * Creates a solution visiting cities in the order given by sequence.
+	 *
+	 * @param sequence Array whose first entries are a permutation of the city indices (may be larger than needed)
+	 * @throws IllegalArgumentException If sequence is too short
+	 */
+	public void createTourFromSequence(int[] sequence) {
+		if (sequence.length < numberOfCities) {
+			throw new IllegalArgumentException("Sequence should contain every city of the tour.");
+		}
+
+		positionsValid = false;
+		System.arraycopy(sequence, 0, tour, 0, numberOfCities);
+		recomputeTourLength();
+	}
+
+	/**
+	 * Inserts in this tour the city appended last to its problem instance, whose number of cities must have grown by
+	 * one since the tour was built or last updated (see TspSampledDataWithDepot.addCity).
+	 * <p>
+	 * The city is inserted in the cheapest of the edges adjacent to its nearest neighbors (see
+	 * setNumberOfNeighbors); all edges are examined only if none of these neighbors is in the tour. The tour is then
+	 * repaired by 2-opt exchanges between the cities around the new edges and their nearest neighbors, until no such
+	 * exchange shortens it. Apart from shifting the tour array once, the cost depends on the number of neighbors and
+	 * of repair exchanges rather than on the number of cities.
+	 *
+	 * @param city Index of the city in the problem instance, which must be the current number of cities of the tour
+	 * @throws IllegalArgumentException If city is not the city appended last to the problem instance
+	 */
+	public void insertCity(int city) {
+		int n = numberOfCities;
+		if (city != n || data.getNumberOfCities() != n + 1) {
+			throw new IllegalArgumentException("City should be the last city of the problem instance, not yet in the "
+					+ "tour.");
+		}
+		prepareIncrementalUpdate(n + 1);
+
+		if (n == 0) {
+			tour[0] = city;
+			positionOf[city] = 0;
+			numberOfCities = 1;
+			tourLength = 0;
+			return;
+		}
+
+		// Cheapest insertion after position bestPosition, among the edges adjacent to the neighbors of city
+		long bestCost = Long.MAX_VALUE;
+		int bestPosition = -1;
+		int count = collectCandidates(city, n, -1);
+		for (int k = 0; k < count; ++k) {
+			int p = positionOf[candidates[k]];
+			int before = (p == 0) ? n - 1 : p - 1;
+			long cost = insertionCost(city, tour[before], tour[p]);
+			if (cost < bestCost) {
+				bestCost = cost;
+				bestPosition = before;
+			}
+			cost = insertionCost(city, tour[p], tour[(p + 1) % n]);
+			if (cost < bestCost) {
+				bestCost = cost;
+				bestPosition = p;
+			}
+		}
+		if (bestPosition < 0) {
+			for (int p = 0; p < n; ++p) {
+				long cost = insertionCost(city, tour[p], tour[(p + 1) % n]);
+				if (cost < bestCost) {
+					bestCost = cost;
+					bestPosition = p;
+				}
+			}
+		}
+
+		int at = bestPosition + 1;
+		System.arraycopy(tour, at, tour, at + 1, n - at);
+		tour[at] = city;
+		numberOfCities = n + 1;
+		for (int p = at; p <= n; ++p) {
+			positionOf[tour[p]] = p;
+		}
+		tourLength += bestCost;
+
+		pushToRepair(city);
+		pushToRepair(tour[bestPosition]);
+		pushToRepair(tour[(at + 1) % (n + 1)]);
+		repairLocally(n + 1, -1);
+	}
+
+	/**
+	 * Removes a city from this tour, linking its predecessor to its successor, and repairs the tour around the new
+	 * edge as insertCity does. The city with the last index then takes the index of the removed city, so that the
+	 * tour matches its problem instance once the city is removed from it with the same convention (see
+	 * TspSampledDataWithDepot.removeCity), which must be done after this call.
+	 *
+	 * @param city Index of the city to be removed
+	 * @throws IndexOutOfBoundsException If city is not a valid city index
+	 */
+	public void removeCity(int city) {
+		int n = numberOfCities;
+		if (city < 0 || city >= n) {
+			throw new IndexOutOfBoundsException("City index out of bounds.");
+		}
+		prepareIncrementalUpdate(n);
+
+		int p = positionOf[city];
+		int before = tour[(p == 0) ? n - 1 : p - 1];
+		int after = tour[(p + 1) % n];
+		if (n > 2) {
+			tourLength += data.getDistance(before, after) - data.getDistance(before, city)
+					- data.getDistance(city, after);
+		} else {
+			tourLength = 0;
+		}
+
+		System.arraycopy(tour, p + 1, tour, p, n - 1 - p);
+		numberOfCities = n - 1;
+		for (int q = p; q < n - 1; ++q) {
+			positionOf[tour[q]] = q;
+		}
+
+		// The removed city keeps its index during the repair, where it is excluded from the candidates
+		pushToRepair(before);
+		pushToRepair(after);
+		repairLocally(n, city);
+
+		int last = n - 1;
+		if (city != last) {
+			int q = positionOf[last];
+			tour[q] = city;
+			positionOf[city] = q;
+		}
+	}
+
+	/**
+	 * Sets the number of nearest neighbors examined by insertCity, removeCity and their local 2-opt repair (see
+	 * DEFAULT_NUMBER_OF_NEIGHBORS). Nearest neighbors are computed once per full data set, when the problem instance
+	 * is a TspDataSet or a TspSampledDataWithDepot; with other problem instances, all cities are examined.
+	 *
+	 * @param numberOfNeighbors Number of neighbors
+	 * @throws IllegalArgumentException If numberOfNeighbors is not positive
+	 */
+	public void setNumberOfNeighbors(int numberOfNeighbors) {
+		if (numberOfNeighbors <= 0) {
+			throw new IllegalArgumentException("Number of neighbors should be positive.");
+		}
+		this.numberOfNeighbors = numberOfNeighbors;
+	}
+
+	/**
+	 * Returns the increase of the tour length when city is inserted between a and b.
+	 */
+	private long insertionCost(int city, int a, int b) {
+		return (long) data.getDistance(a, city) + data.getDistance(city, b) - data.getDistance(a, b);
+	}
+
+	/**
+	 * Allocates the buffers of the incremental operations for numberOfLabels city indices if needed, and recomputes
+	 * the positions of the cities if the tour was modified by another operation.
+	 */
+	private void prepareIncrementalUpdate(int numberOfLabels) {
+		if (numberOfLabels > tour.length) {
+			int capacity = Math.max(numberOfLabels, 2 * tour.length);
+			tour = Arrays.copyOf(tour, capacity);
+			visited = new boolean[capacity];
+		}
+		if (positionOf == null || positionOf.length < tour.length) {
+			positionOf = new int[tour.length];
+			repairStack = new int[tour.length];
+			toRepair = new boolean[tour.length];
+			positionsValid = false;
+		}
+		if (!positionsValid) {
+			for (int p = 0; p < numberOfCities; ++p) {
+				positionOf[tour[p]] = p;
+			}
+			positionsValid = true;
+		}
+	}
+
+	/**
+	 * Collects in candidates the cities of the tour (indices below numberOfLabels, except city and excluded) among
+	 * the nearest neighbors of city, or all cities of the tour if no neighbor lists are available.
+	 *
+	 * @return number of candidates
+	 */
+	private int collectCandidates(int city, int numberOfLabels, int excluded) {
+		TspSampledDataWithDepot sample = (data instanceof TspSampledDataWithDepot) ? (TspSampledDataWithDepot) data
+				: null;
+		TspDataSet fullData = (sample != null) ? sample.getFullData()
+				: (data instanceof TspDataSet) ? (TspDataSet) data : null;
+		int capacity = (fullData == null) ? numberOfLabels : numberOfNeighbors;
+		if (candidates == null || candidates.length < capacity) {
+			candidates = new int[Math.max(capacity, tour.length)];
+		}
 
-		// Reverse the section ]i, j] in tour
-		for(int newI = (int)i + 1; newI <= j; ++newI, --newJ) {
-			tour[newI] = oldTour[newJ];
+		int count = 0;
+		if (fullData == null) {
+			for (int c = 0; c < numberOfLabels; ++c) {
+				if (c != city && c != excluded) {
+					candidates[count++] = c;
+				}
+			}
+			return count;
 		}
 
+		TspNeighborLists lists = fullData.getNeighborLists(numberOfNeighbors);
+		int id = (sample != null) ? sample.getIdInFullData(city) : city;
+		int k = Math.min(numberOfNeighbors, lists.getNumberOfNeighbors());
+		for (int r = 0; r < k; ++r) {
+			int neighbor = lists.getNeighbor(id, r);
+			int c = (sample != null) ? sample.getSampleIndexOf(neighbor) : neighbor;
+			if (c >= 0 && c < numberOfLabels && c != excluded) {
+				candidates[count++] = c;
+			}
+		}
+		return count;
+	}
+
+	private void pushToRepair(int city) {
+		if (!toRepair[city]) {
+			toRepair[city] = true;
+			repairStack[repairStackSize++] = city;
+		}
+	}
+
+	/**
+	 * Applies the best 2-opt exchange between the edges of each city to be repaired and the edges of its nearest
+	 * neighbors, pushing the cities of the new edges to be repaired in turn, until no such exchange shortens the tour.
+	 */
+	private void repairLocally(int numberOfLabels, int excluded) {
+		while (repairStackSize > 0) {
+			int a = repairStack[--repairStackSize];
+			toRepair[a] = false;
+			int n = numberOfCities;
+			if (n < 4) {
+				continue;
+			}
+
+			int pa = positionOf[a];
+			int aNext = tour[(pa + 1) % n];
+			int aPrev = tour[(pa + n - 1) % n];
+			long best = 0;
+			int bestC = -1;
+			boolean bestIsNext = false;
+			int count = collectCandidates(a, numberOfLabels, excluded);
+			for (int k = 0; k < count; ++k) {
+				int c = candidates[k];
+				int pc = positionOf[c];
+				long dac = data.getDistance(a, c);
+				// Edges (a, aNext) and (c, cNext) replaced by (a, c) and (aNext, cNext)
+				int cNext = tour[(pc + 1) % n];
+				if (c != aNext && cNext != a) {
+					long gain = data.getDistance(a, aNext) + data.getDistance(c, cNext) - dac
+							- data.getDistance(aNext, cNext);
+					if (gain > best) {
+						best = gain;
+						bestC = c;
+						bestIsNext = true;
+					}
+				}
+				// Edges (aPrev, a) and (cPrev, c) replaced by (a, c) and (aPrev, cPrev)
+				int cPrev = tour[(pc + n - 1) % n];
+				if (c != aPrev && cPrev != a) {
+					long gain = data.getDistance(aPrev, a) + data.getDistance(cPrev, c) - dac
+							- data.getDistance(aPrev, cPrev);
+					if (gain > best) {
+						best = gain;
+						bestC = c;
+						bestIsNext = false;
+					}
+				}
+			}
+			if (bestC < 0) {
+				continue;
+			}
+
+			int pc = positionOf[bestC];
+			int other;
+			int otherOfC;
+			if (bestIsNext) {
+				other = aNext;
+				otherOfC = tour[(pc + 1) % n];
+				reverseSegment((pa + 1) % n, pc);
+			} else {
+				other = aPrev;
+				otherOfC = tour[(pc + n - 1) % n];
+				reverseSegment(pa, (pc + n - 1) % n);
+			}
+			tourLength -= best;
+			pushToRepair(a);
+			pushToRepair(bestC);
+			pushToRepair(other);
+			pushToRepair(otherOfC);
+		}
+	}
+
+	/**
+	 * Reverses the cities from position from to position to (going forward, wrapping around the end of the tour), or
+	 * the complementary section if it is shorter, which gives the same cyclic tour.
+	 */
+	private void reverseSegment(int from, int to) {
+		int n = numberOfCities;
+		int length = (to - from + n) % n + 1;
+		if (2 * length > n) {
+			int newFrom = (to + 1) % n;
+			to = (from + n - 1) % n;
+			from = newFrom;
+			length = n - length;
+		}
+		for (int s = 0; s < length / 2; ++s) {
+			int i = (from + s) % n;
+			int j = (to - s + n) % n;
+			int tmp = tour[i];
+			tour[i] = tour[j];
+			tour[j] = tmp;
+			positionOf[tour[i]] = i;
+			positionOf[tour[j]] = j;
+		}
 	}
 
 }
@@ -0,0 +1,35 @@
+package tsp;
+
+/**
+ * Reusable buffers needed to run one TspExperiment replication: a resettable sample of the full data set and a
+ * tour on that sample.
+ * <p>
+ * A workspace is not thread safe. TspExperiment keeps one workspace per worker thread, so that after the first
+ * replication of each thread, sampling, construction and improvement run without allocating.
+ */
+final class TspWorkspace {
+
+	// Resettable sample of the full data set
+	final TspSampledDataWithDepot sample;
+	// Tour on sample, with buffers large enough for any sample
+	final TspTour tour;
+	// Buffer used to build a starting sequence of sample cities
+	final int[] sequence;
+	// Key used to look up the current sample in a TspSolveCache
+	final TspSolveCache.SubsetKey cacheKey;
+	// Tasks building the starting tours of a multi-start construction, the first one on tour (null until used)
+	TspExperiment.StartTask[] startTasks;
+	// Exact solver of the small samples, with its tables (null until used)
+	HeldKarpSolver exactSolver;
+	// Number of 2-opt moves done for the last sample (0 if its length came from the cache)
+	long numberOfTwoOptMoves;
+	// Likelihood ratio of the last sample (1 unless it was drawn with TILTED sampling)
+	double likelihoodRatio = 1.0;
+
+	TspWorkspace(TspDataSet data) {
+		sample = new TspSampledDataWithDepot(data);
+		tour = new TspTour(sample, data.getNumberOfCities());
+		sequence = new int[data.getNumberOfCities()];
+		cacheKey = new TspSolveCache.SubsetKey(data.getNumberOfCities());
+	}
+}
@@ -0,0 +1,262 @@
+package tsp;
+
+import java.util.InputMismatchException;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+/**
+ * Reader of symmetric TSP instances in TSPLIB format.
+ * <p>
+ * Supported keywords are NAME, TYPE (TSP only), COMMENT, DIMENSION, EDGE_WEIGHT_TYPE (EUC_2D, CEIL_2D, ATT, GEO and
+ * EXPLICIT), EDGE_WEIGHT_FORMAT (all matrix formats), NODE_COORD_SECTION, EDGE_WEIGHT_SECTION, DISPLAY_DATA_SECTION
+ * and EOF. Other specification keywords are ignored. Cities are renumbered from 0, in the order of the file.
+ */
+final class TsplibReader {
+
+	private String name;
+	private int numberOfCities = -1;
+	private DistanceMetric metric;
+	private String edgeWeightFormat = "FULL_MATRIX";
+	private double[] x;
+	private double[] y;
+	// Distance matrix of an EXPLICIT instance: row major up to TspDataSet.MAX_CITIES_OF_FLAT_MATRIX cities, by rows
+	// above (the other one is null)
+	private int[] distances;
+	private int[][] distanceRows;
+
+	/**
+	 * Reads an instance from a scanner positioned at the beginning of its specification part.
+	 *
+	 * @param scanner scanner to read from
+	 * @throws TspParsingException if the content does not conform to TSPLIB format or is not supported
+	 */
+	TsplibReader(Scanner scanner) throws TspParsingException {
+		try {
+			while (scanner.hasNextLine()) {
+				String line = scanner.nextLine().trim();
+				if (line.isEmpty()) {
+					continue;
+				}
+				int colon = line.indexOf(':');
+				String keyword = (colon < 0 ? line : line.substring(0, colon)).trim().toUpperCase(Locale.ROOT);
+				String value = colon < 0 ? "" : line.substring(colon + 1).trim();
+
+				switch (keyword) {
+					case "NAME":
+						name = value;
+						break;
+					case "TYPE":
+						if (!value.equalsIgnoreCase("TSP")) {
+							throw new TspParsingException("Unsupported TSPLIB type: " + value + " (only TSP is supported).");
+						}
+						break;
+					case "DIMENSION":
+						readDimension(value);
+						break;
+					case "EDGE_WEIGHT_TYPE":
+						readEdgeWeightType(value);
+						break;
+					case "EDGE_WEIGHT_FORMAT":
+						edgeWeightFormat = value.toUpperCase(Locale.ROOT);
+						break;
+					case "NODE_COORD_SECTION":
+					case "DISPLAY_DATA_SECTION":
+						readCoordinates(scanner, keyword);
+						break;
+					case "EDGE_WEIGHT_SECTION":
+						readEdgeWeights(scanner);
+						break;
+					case "EOF":
+						checkComplete();
+						return;
+					default:
+						// COMMENT and unsupported specifications
+						break;
+				}
+			}
+		} catch (IllegalStateException e) {
+			throw new TspParsingException("Invalid data. Unable to read data.");
+		}
+		checkComplete();
+	}
+
+	private void readDimension(String value) throws TspParsingException {
+		try {
+			numberOfCities = Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new TspParsingException("Invalid data value. Invalid DIMENSION: " + value + ".");
+		}
+		if (numberOfCities < 3) {
+			throw new TspParsingException("Invalid data value. Number of cities should be at least 3.");
+		}
+	}
+
+	private void readEdgeWeightType(String value) throws TspParsingException {
+		try {
+			metric = DistanceMetric.valueOf(value.toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			throw new TspParsingException("Unsupported EDGE_WEIGHT_TYPE: " + value + ".");
+		}
+	}
+
+	/**
+	 * Reads the lines "<city number> <x> <y>" of a coordinates section.
+	 */
+	private void readCoordinates(Scanner scanner, String section) throws TspParsingException {
+		checkDimension(section);
+		x = new double[numberOfCities];
+		y = new double[numberOfCities];
+		for (int i = 0; i < numberOfCities; i++) {
+			try {
+				int cityNumber = scanner.nextInt();
+				if (cityNumber != i + 1) {
+					throw new TspParsingException(
+							String.format("Invalid city number in %s: %s expected, %s read.", section, i + 1, cityNumber));
+				}
+				x[i] = Double.parseDouble(scanner.next());
+				y[i] = Double.parseDouble(scanner.next());
+			} catch (InputMismatchException | NumberFormatException e) {
+				throw new TspParsingException("Invalid data value in " + section + ". Coordinates should be numbers.");
+			} catch (NoSuchElementException e) {
+				throw new TspParsingException("Incomplete " + section + ": should contain " + numberOfCities
+						+ " lines \"<city number> <x> <y>\"");
+			}
+		}
+		if (scanner.hasNextLine()) {
+			scanner.nextLine();
+		}
+	}
+
+	/**
+	 * Reads the matrix of an EDGE_WEIGHT_SECTION, according to EDGE_WEIGHT_FORMAT.
+	 */
+	private void readEdgeWeights(Scanner scanner) throws TspParsingException {
+		checkDimension("EDGE_WEIGHT_SECTION");
+		int n = numberOfCities;
+		if (n <= TspDataSet.MAX_CITIES_OF_FLAT_MATRIX) {
+			distances = new int[n * n];
+		} else {
+			distanceRows = new int[n][n];
+		}
+		try {
+			switch (edgeWeightFormat) {
+				case "FULL_MATRIX":
+					for (int i = 0; i < n; i++) {
+						for (int j = 0; j < n; j++) {
+							setDistance(i, j, scanner.nextInt());
+						}
+					}
+					break;
+				// Column formats of a symmetric matrix are the row formats of the other triangle
+				case "UPPER_ROW":
+				case "LOWER_COL":
+					readTriangle(scanner, true, false);
+					break;
+				case "LOWER_ROW":
+				case "UPPER_COL":
+					readTriangle(scanner, false, false);
+					break;
+				case "UPPER_DIAG_ROW":
+				case "LOWER_DIAG_COL":
+					readTriangle(scanner, true, true);
+					break;
+				case "LOWER_DIAG_ROW":
+				case "UPPER_DIAG_COL":
+					readTriangle(scanner, false, true);
+					break;
+				default:
+					throw new TspParsingException("Unsupported EDGE_WEIGHT_FORMAT: " + edgeWeightFormat + ".");
+			}
+		} catch (InputMismatchException e) {
+			throw new TspParsingException("Invalid data value in EDGE_WEIGHT_SECTION. Weights should be integers.");
+		} catch (NoSuchElementException e) {
+			throw new TspParsingException("Incomplete EDGE_WEIGHT_SECTION.");
+		}
+		if (scanner.hasNextLine()) {
+			scanner.nextLine();
+		}
+	}
+
+	/**
+	 * Reads a triangle of a symmetric matrix, row by row, and fills both triangles.
+	 */
+	private void readTriangle(Scanner scanner, boolean upper, boolean diagonal) {
+		int n = numberOfCities;
+		for (int i = 0; i < n; i++) {
+			int from = upper ? (diagonal ? i : i + 1) : 0;
+			int to = upper ? n : (diagonal ? i + 1 : i);
+			for (int j = from; j < to; j++) {
+				int distance = scanner.nextInt();
+				setDistance(i, j, distance);
+				setDistance(j, i, distance);
+			}
+		}
+	}
+
+	private void setDistance(int i, int j, int distance) {
+		if (distances != null) {
+			distances[i * numberOfCities + j] = distance;
+		} else {
+			distanceRows[i][j] = distance;
+		}
+	}
+
+	private void checkDimension(String section) throws TspParsingException {
+		if (numberOfCities < 0) {
+			throw new TspParsingException("Invalid data format. DIMENSION should be given before " + section + ".");
+		}
+	}
+
+	private void checkComplete() throws TspParsingException {
+		checkDimension("data sections");
+		if (metric == null) {
+			throw new TspParsingException("Invalid data format. Missing EDGE_WEIGHT_TYPE.");
+		}
+		if (metric == DistanceMetric.EXPLICIT ? distances == null && distanceRows == null : x == null) {
+			throw new TspParsingException("Invalid data format. Missing "
+					+ (metric == DistanceMetric.EXPLICIT ? "EDGE_WEIGHT_SECTION." : "NODE_COORD_SECTION."));
+		}
+		if (x == null) {
+			// Explicit instance without display data
+			x = new double[numberOfCities];
+			y = new double[numberOfCities];
+		}
+	}
+
+	String getName() {
+		return name;
+	}
+
+	int getNumberOfCities() {
+		return numberOfCities;
+	}
+
+	DistanceMetric getMetric() {
+		return metric;
+	}
+
+	double[] getX() {
+		return x;
+	}
+
+	double[] getY() {
+		return y;
+	}
+
+	/**
+	 * Returns the row major distance matrix of an EXPLICIT instance (null otherwise, or if the matrix is stored by
+	 * rows).
+	 */
+	int[] getDistances() {
+		return distances;
+	}
+
+	/**
+	 * Returns the distance matrix of an EXPLICIT instance of more than TspDataSet.MAX_CITIES_OF_FLAT_MATRIX cities,
+	 * row by row (null otherwise).
+	 */
+	int[][] getDistanceRows() {
+		return distanceRows;
+	}
+}